@@ -0,0 +1,535 @@
+package io.github.dbstarll.certs.audit;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.CertificationRequest;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.pkcs.RSAPrivateKey;
+import org.bouncycastle.asn1.pkcs.RSAPublicKey;
+import org.bouncycastle.asn1.sec.ECPrivateKey;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.asn1.x509.DSAParameter;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.ECNamedCurveTable;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.util.io.Streams;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 并行扫描目录树中的证书、证书签发申请与私钥(PEM或DER), 以JSON Lines格式输出发现的问题.
+ *
+ * <p>每个目录一个fork-join任务, 目录下的文件按批拆分为子任务, 不跟随符号链接. 文件只做ASN.1结构解码,
+ * 不构造JCA证书对象, 也不校验签名. 证书链检查只索引CA证书(basicConstraints的cA为true或自签名)的主体名称
+ * 和被引用的签发者名称, 其大小随CA数而非证书数增长; 除此之外不在内存中保留任何解析结果, 发现的问题直接写出.
+ * 超过1MB的PEM文件流式解析, 超过1MB的DER文件报告为无法读取. 加密的私钥无法检查, 直接跳过.</p>
+ */
+public final class AuditScanner {
+    private static final int FILES_PER_TASK = 64;
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+    private static final String PEM_BEGIN = "-----BEGIN ";
+    private static final int MIN_RSA_BITS = 2048;
+    private static final int MIN_EC_BITS = 256;
+    private static final Set<ASN1ObjectIdentifier> SHA1_SIGNATURES = new HashSet<>(Arrays.asList(
+            PKCSObjectIdentifiers.sha1WithRSAEncryption,
+            OIWObjectIdentifiers.sha1WithRSA,
+            X9ObjectIdentifiers.ecdsa_with_SHA1,
+            X9ObjectIdentifiers.id_dsa_with_sha1));
+
+    /**
+     * 检查项.
+     */
+    public enum Check {
+        /**
+         * 文件无法读取或解析.
+         */
+        UNREADABLE,
+        /**
+         * 证书已过期.
+         */
+        EXPIRED,
+        /**
+         * 证书即将过期.
+         */
+        EXPIRING_SOON,
+        /**
+         * 密钥长度不足.
+         */
+        WEAK_KEY,
+        /**
+         * 使用SHA-1签名.
+         */
+        SHA1_SIGNATURE,
+        /**
+         * 终端实体证书或非CA的证书签发申请缺少SAN.
+         */
+        MISSING_SAN,
+        /**
+         * 在扫描范围内找不到签发者证书.
+         */
+        BROKEN_CHAIN
+    }
+
+    private final Writer out;
+    private final long now;
+    private final long expiringMillis;
+    private final ForkJoinPool pool;
+    private final Set<X500Name> caSubjects = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<X500Name, Issuer> issuers = new ConcurrentHashMap<>();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder objects = new LongAdder();
+    private final LongAdder findings = new LongAdder();
+
+    /**
+     * 构建扫描器.
+     *
+     * @param out          JSON Lines输出
+     * @param expiringDays 剩余有效期少于此天数的证书视为即将过期
+     * @param parallelism  并行度
+     */
+    public AuditScanner(final Writer out, final int expiringDays, final int parallelism) {
+        isTrue(expiringDays >= 0, "expiringDays must not be negative: %d", expiringDays);
+        this.out = notNull(out, "out is null");
+        this.now = System.currentTimeMillis();
+        this.expiringMillis = TimeUnit.DAYS.toMillis(expiringDays);
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * 扫描目录树, 可以多次调用, 证书链检查覆盖所有已扫描的目录.
+     *
+     * @param root 根目录
+     * @throws IOException io exception
+     */
+    public void scan(final Path root) throws IOException {
+        try {
+            pool.invoke(new DirectoryTask(root));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 完成扫描: 输出证书链检查的结果并关闭线程池.
+     *
+     * @throws IOException io exception
+     */
+    public void finish() throws IOException {
+        pool.shutdown();
+        try {
+            for (Map.Entry<X500Name, Issuer> entry : issuers.entrySet()) {
+                if (!caSubjects.contains(entry.getKey())) {
+                    final Issuer issuer = entry.getValue();
+                    report(issuer.path, issuer.index, "certificate", Check.BROKEN_CHAIN, "issuer not found: "
+                            + entry.getKey() + ", issued " + issuer.count.sum() + " certificates");
+                }
+            }
+            issuers.clear();
+            out.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 已扫描的文件数.
+     *
+     * @return 已扫描的文件数
+     */
+    public long getFileCount() {
+        return files.sum();
+    }
+
+    /**
+     * 已解析的证书、证书签发申请与私钥数.
+     *
+     * @return 已解析的对象数
+     */
+    public long getObjectCount() {
+        return objects.sum();
+    }
+
+    /**
+     * 已输出的问题数.
+     *
+     * @return 已输出的问题数
+     */
+    public long getFindingCount() {
+        return findings.sum();
+    }
+
+    @SuppressWarnings("serial")
+    private final class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+
+        private DirectoryTask(final Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            final List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> batch = new ArrayList<>(FILES_PER_TASK);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        tasks.add(new DirectoryTask(path));
+                    } else if (attributes.isRegularFile()) {
+                        batch.add(path);
+                        if (batch.size() == FILES_PER_TASK) {
+                            tasks.add(new FilesTask(batch));
+                            batch = new ArrayList<>(FILES_PER_TASK);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                report(directory, -1, "directory", Check.UNREADABLE, e.toString());
+            }
+            if (!batch.isEmpty()) {
+                tasks.add(new FilesTask(batch));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class FilesTask extends RecursiveAction {
+        private final List<Path> paths;
+
+        private FilesTask(final List<Path> paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        protected void compute() {
+            for (Path path : paths) {
+                files.increment();
+                try {
+                    scanFile(path);
+                } catch (IOException | RuntimeException e) {
+                    report(path, -1, "file", Check.UNREADABLE, e.toString());
+                }
+            }
+        }
+    }
+
+    private void scanFile(final Path path) throws IOException {
+        final long size = Files.size(path);
+        if (size == 0) {
+            return;
+        } else if (size > MAX_FILE_SIZE) {
+            scanLargeFile(path, size);
+            return;
+        }
+        final byte[] content = Files.readAllBytes(path);
+        if (content.length == 0) {
+            return;
+        } else if (content[0] == 0x30) {
+            scanDER(path, ASN1Sequence.getInstance(content));
+        } else if (startsWith(content, PEM_BEGIN)) {
+            scanPEM(path, new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * DER只解码一次, 按结构判断是证书、证书签发申请还是私钥.
+     */
+    private void scanDER(final Path path, final ASN1Sequence sequence) throws IOException {
+        final ASN1Encodable first = sequence.getObjectAt(0);
+        final ASN1Encodable second = sequence.size() > 1 ? sequence.getObjectAt(1) : null;
+        if (first instanceof ASN1Integer) {
+            if (second instanceof ASN1Sequence) {
+                checkPrivateKey(path, 0, PrivateKeyInfo.getInstance(sequence));
+            } else if (second instanceof ASN1OctetString) {
+                final ECPrivateKey key = ECPrivateKey.getInstance(sequence);
+                checkPrivateKey(path, 0, new PrivateKeyInfo(new AlgorithmIdentifier(
+                        X9ObjectIdentifiers.id_ecPublicKey, key.getParametersObject()), key));
+            } else {
+                checkPrivateKey(path, 0, new PrivateKeyInfo(new AlgorithmIdentifier(
+                        PKCSObjectIdentifiers.rsaEncryption, DERNull.INSTANCE), RSAPrivateKey.getInstance(sequence)));
+            }
+        } else if (sequence.size() == 2 && second instanceof ASN1OctetString) {
+            // 加密的PKCS#8私钥
+            return;
+        } else if (sequence.size() == 3 && ASN1Sequence.getInstance(first).size() >= 6) {
+            checkCertificate(path, 0, new X509CertificateHolder(Certificate.getInstance(sequence)));
+        } else {
+            checkRequest(path, 0, new PKCS10CertificationRequest(CertificationRequest.getInstance(sequence)));
+        }
+    }
+
+    private void scanLargeFile(final Path path, final long size) throws IOException {
+        final byte[] head = new byte[PEM_BEGIN.length()];
+        try (InputStream in = Files.newInputStream(path)) {
+            Streams.readFully(in, head);
+        }
+        if (head[0] == 0x30) {
+            report(path, -1, "file", Check.UNREADABLE, "DER file too large: " + size + " bytes");
+        } else if (startsWith(head, PEM_BEGIN)) {
+            // 证书流文件可能很大, 逐个对象解析而不整体读入内存
+            scanPEM(path, Files.newBufferedReader(path, StandardCharsets.US_ASCII));
+        }
+    }
+
+    private void scanPEM(final Path path, final Reader reader) throws IOException {
+        try (PEMParser parser = new PEMParser(reader)) {
+            int index = 0;
+            Object obj;
+            while ((obj = parser.readObject()) != null) {
+                if (obj instanceof X509CertificateHolder) {
+                    checkCertificate(path, index, (X509CertificateHolder) obj);
+                } else if (obj instanceof PKCS10CertificationRequest) {
+                    checkRequest(path, index, (PKCS10CertificationRequest) obj);
+                } else if (obj instanceof PEMKeyPair) {
+                    objects.increment();
+                    checkKey(path, index, "key", ((PEMKeyPair) obj).getPublicKeyInfo());
+                } else if (obj instanceof PrivateKeyInfo) {
+                    checkPrivateKey(path, index, (PrivateKeyInfo) obj);
+                }
+                index++;
+            }
+        }
+    }
+
+    private static boolean startsWith(final byte[] content, final String prefix) {
+        if (content.length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (content[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkCertificate(final Path path, final int index, final X509CertificateHolder crt) {
+        objects.increment();
+        final Date notAfter = crt.getNotAfter();
+        if (notAfter.getTime() < now) {
+            report(path, index, "certificate", Check.EXPIRED, "notAfter " + notAfter.toInstant());
+        } else if (notAfter.getTime() < now + expiringMillis) {
+            report(path, index, "certificate", Check.EXPIRING_SOON, "notAfter " + notAfter.toInstant());
+        }
+        checkKey(path, index, "certificate", crt.getSubjectPublicKeyInfo());
+        checkSignature(path, index, "certificate", crt.getSignatureAlgorithm());
+
+        final Extensions extensions = crt.getExtensions();
+        final BasicConstraints basicConstraints = extensions == null ? null
+                : BasicConstraints.fromExtensions(extensions);
+        final boolean ca = basicConstraints != null && basicConstraints.isCA();
+        if (!ca && (extensions == null || extensions.getExtension(Extension.subjectAlternativeName) == null)) {
+            report(path, index, "certificate", Check.MISSING_SAN, crt.getSubject().toString());
+        }
+
+        // 只有CA证书能作为签发者, 终端实体证书的主体不进入索引; 自签名证书可能是没有扩展的v1根证书
+        final boolean selfSigned = crt.getSubject().equals(crt.getIssuer());
+        if (ca || selfSigned) {
+            caSubjects.add(crt.getSubject());
+        }
+        if (!selfSigned) {
+            issuers.computeIfAbsent(crt.getIssuer(), k -> new Issuer(path, index)).count.increment();
+        }
+    }
+
+    private void checkRequest(final Path path, final int index, final PKCS10CertificationRequest csr) {
+        objects.increment();
+        checkKey(path, index, "csr", csr.getSubjectPublicKeyInfo());
+        checkSignature(path, index, "csr", csr.getSignatureAlgorithm());
+        final Extensions extensions = csr.getRequestedExtensions();
+        if (extensions == null
+                || extensions.getExtension(Extension.subjectAlternativeName) == null && !isCA(extensions)) {
+            report(path, index, "csr", Check.MISSING_SAN, csr.getSubject().toString());
+        }
+    }
+
+    private void checkPrivateKey(final Path path, final int index, final PrivateKeyInfo key) {
+        objects.increment();
+        final AlgorithmIdentifier algorithm = key.getPrivateKeyAlgorithm();
+        final SubjectPublicKeyInfo publicKey;
+        try {
+            if (PKCSObjectIdentifiers.rsaEncryption.equals(algorithm.getAlgorithm())) {
+                final RSAPrivateKey rsa = RSAPrivateKey.getInstance(key.parsePrivateKey());
+                publicKey = new SubjectPublicKeyInfo(algorithm,
+                        new RSAPublicKey(rsa.getModulus(), rsa.getPublicExponent()));
+            } else {
+                // EC与DSA的密钥长度由算法参数决定, 无需公钥
+                publicKey = new SubjectPublicKeyInfo(algorithm, new byte[0]);
+            }
+        } catch (IOException | RuntimeException e) {
+            report(path, index, "key", Check.UNREADABLE, "private key: " + e);
+            return;
+        }
+        checkKey(path, index, "key", publicKey);
+    }
+
+    /**
+     * 申请CA证书的证书签发申请: 请求了cA为true的basicConstraints, 或请求了keyCertSign的keyUsage.
+     */
+    private static boolean isCA(final Extensions extensions) {
+        final BasicConstraints basicConstraints = BasicConstraints.fromExtensions(extensions);
+        final KeyUsage keyUsage = KeyUsage.fromExtensions(extensions);
+        return basicConstraints != null && basicConstraints.isCA()
+                || keyUsage != null && keyUsage.hasUsages(KeyUsage.keyCertSign);
+    }
+
+    private void checkKey(final Path path, final int index, final String type, final SubjectPublicKeyInfo key) {
+        final AlgorithmIdentifier algorithm = key.getAlgorithm();
+        final ASN1ObjectIdentifier oid = algorithm.getAlgorithm();
+        try {
+            if (PKCSObjectIdentifiers.rsaEncryption.equals(oid)) {
+                final int bits = RSAPublicKey.getInstance(key.parsePublicKey()).getModulus().bitLength();
+                if (bits < MIN_RSA_BITS) {
+                    report(path, index, type, Check.WEAK_KEY, "RSA " + bits);
+                }
+            } else if (X9ObjectIdentifiers.id_ecPublicKey.equals(oid)) {
+                final X9ECParameters curve = algorithm.getParameters() instanceof ASN1ObjectIdentifier
+                        ? ECNamedCurveTable.getByOID((ASN1ObjectIdentifier) algorithm.getParameters()) : null;
+                final int bits = curve == null ? 0 : curve.getCurve().getFieldSize();
+                if (bits < MIN_EC_BITS) {
+                    report(path, index, type, Check.WEAK_KEY, "EC " + (bits == 0 ? "unknown curve" : bits));
+                }
+            } else if (X9ObjectIdentifiers.id_dsa.equals(oid)) {
+                final int bits = DSAParameter.getInstance(algorithm.getParameters()).getP().bitLength();
+                if (bits < MIN_RSA_BITS) {
+                    report(path, index, type, Check.WEAK_KEY, "DSA " + bits);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            report(path, index, type, Check.UNREADABLE, "public key: " + e);
+        }
+    }
+
+    private void checkSignature(final Path path, final int index, final String type,
+                                final AlgorithmIdentifier signatureAlgorithm) {
+        if (SHA1_SIGNATURES.contains(signatureAlgorithm.getAlgorithm())) {
+            report(path, index, type, Check.SHA1_SIGNATURE, signatureAlgorithm.getAlgorithm().getId());
+        }
+    }
+
+    private void report(final Path path, final int index, final String type, final Check check,
+                        final String detail) {
+        final StringBuilder line = new StringBuilder(256);
+        line.append("{\"path\":");
+        quote(line, path.toString());
+        if (index >= 0) {
+            line.append(",\"index\":").append(index);
+        }
+        line.append(",\"type\":\"").append(type).append("\",\"check\":\"").append(check).append("\",\"detail\":");
+        quote(line, detail);
+        line.append("}\n");
+        findings.increment();
+        try {
+            synchronized (out) {
+                out.write(line.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void quote(final StringBuilder line, final String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * 签发者名称索引的值: 首次出现的位置与签发的证书数.
+     */
+    private static final class Issuer {
+        private final Path path;
+        private final int index;
+        private final LongAdder count = new LongAdder();
+
+        private Issuer(final Path path, final int index) {
+            this.path = path;
+            this.index = index;
+        }
+    }
+
+    /**
+     * 主程序入口.
+     *
+     * @param args 待扫描的目录, 可选参数--expiring-days=N
+     * @throws Exception 任何异常都抛出
+     */
+    public static void main(final String[] args) throws Exception {
+        int expiringDays = 30;
+        final List<Path> roots = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--expiring-days=")) {
+                expiringDays = Integer.parseInt(arg.substring("--expiring-days=".length()));
+            } else {
+                roots.add(Paths.get(arg));
+            }
+        }
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        final AuditScanner scanner = new AuditScanner(writer, expiringDays,
+                Runtime.getRuntime().availableProcessors());
+        for (Path root : roots.isEmpty() ? Collections.singletonList(Paths.get(".")) : roots) {
+            scanner.scan(root);
+        }
+        scanner.finish();
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.dbstarll.certs.bundle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * 预先编码好的证书或证书链, 内容不可变, 附带按内容计算的强ETag.
+ */
+public final class ChainBundle {
+    private static final int ETAG_BYTES = 16;
+
+    private final String contentType;
+    private final byte[] content;
+    private final String etag;
+
+    ChainBundle(final String contentType, final byte[] content) {
+        this.contentType = contentType;
+        this.content = content;
+        this.etag = '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest(content)) + '"';
+    }
+
+    /**
+     * get content type.
+     *
+     * @return content type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * get strong ETag, 包含双引号.
+     *
+     * @return strong ETag
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * get content length.
+     *
+     * @return content length
+     */
+    public int getLength() {
+        return content.length;
+    }
+
+    /**
+     * 将内容写入输出流.
+     *
+     * @param out 输出流
+     * @throws IOException io exception
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(content);
+    }
+
+    private static byte[] digest(final byte[] content) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            final byte[] truncated = new byte[ETAG_BYTES];
+            System.arraycopy(digest, 0, truncated, 0, ETAG_BYTES);
+            return truncated;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
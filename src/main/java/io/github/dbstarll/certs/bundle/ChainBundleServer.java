@@ -0,0 +1,126 @@
+package io.github.dbstarll.certs.bundle;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 通过HTTP提供预先编码的证书和证书链, 路径为/ca/$FILE_NAME, 支持GET、HEAD和If-None-Match条件请求.
+ *
+ * <p>响应体写出预先编码的字节, 每个请求不做任何编码工作; JDK HttpServer没有sendfile之类的零拷贝途径,
+ * 字节仍会复制到连接的输出缓冲中.</p>
+ */
+public final class ChainBundleServer implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChainBundleServer.class);
+
+    private static final String CONTEXT = "/ca/";
+    private static final String CACHE_CONTROL = "public, max-age=60";
+
+    private final ChainBundleService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * 构建并启动服务.
+     *
+     * @param service 证书链服务
+     * @param address 监听地址, 端口为0时使用临时端口
+     * @param threads 处理请求的线程数
+     * @throws IOException io exception
+     */
+    public ChainBundleServer(final ChainBundleService service, final InetSocketAddress address, final int threads)
+            throws IOException {
+        this.service = notNull(service, "service is null");
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, "chain-bundle-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(notNull(address, "address is null"), 0);
+        server.createContext(CONTEXT, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        LOGGER.info("chain bundle server listening on {}", server.getAddress());
+    }
+
+    /**
+     * get listening address.
+     *
+     * @return listening address
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String method = exchange.getRequestMethod();
+            final boolean head = "HEAD".equals(method);
+            if (!head && !"GET".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_METHOD, -1);
+                return;
+            }
+
+            final String path = exchange.getRequestURI().getPath();
+            final ChainBundle bundle = service.get(path.substring(CONTEXT.length()));
+            if (bundle == null) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+                return;
+            }
+
+            final Headers headers = exchange.getResponseHeaders();
+            headers.set("ETag", bundle.getETag());
+            headers.set("Cache-Control", CACHE_CONTROL);
+            if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), bundle.getETag())) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+                return;
+            }
+            headers.set("Content-Type", bundle.getContentType());
+            if (head) {
+                headers.set("Content-Length", Integer.toString(bundle.getLength()));
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+            } else {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bundle.getLength());
+                try (OutputStream out = exchange.getResponseBody()) {
+                    bundle.writeTo(out);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static boolean matches(final String ifNoneMatch, final String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            final String tag = candidate.trim();
+            if ("*".equals(tag) || etag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.dbstarll.certs.bundle;
+
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.certs.registry.CertificationAuthorityRegistry;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cms.CMSAbsentContent;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.util.CollectionStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 为注册表中的每个CA预先编码证书和证书链, 供AIA caIssuers和证书链下载直接使用.
+ *
+ * <p>每个CA对应以下文件:</p>
+ * <ul>
+ *     <li>$CA_NAME.cer: DER编码的CA证书, application/pkix-cert</li>
+ *     <li>$CA_NAME.pem: PEM编码的CA证书, application/x-pem-file</li>
+ *     <li>$CA_NAME-chain.pem: 从本证书到根证书的PEM证书链, application/pem-certificate-chain</li>
+ *     <li>$CA_NAME-chain.p7c: 从本证书到根证书的PKCS#7 certs-only证书链, application/pkcs7-mime</li>
+ * </ul>
+ *
+ * <p>查询时只比较注册表的版本号, 版本变化后才重新构建; CA对象(包括其签发者链)未变化的编码结果直接复用.
+ * 某个CA构建失败时沿用其上一版的编码结果, 在注册表下一次变化或30秒后重试, 期间的查询不会反复构建.
+ * 没有证书的CA不提供任何文件.</p>
+ */
+public final class ChainBundleService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChainBundleService.class);
+
+    private static final String PKIX_CERT = "application/pkix-cert";
+    private static final String PEM_FILE = "application/x-pem-file";
+    private static final String PEM_CHAIN = "application/pem-certificate-chain";
+    private static final String PKCS7_MIME = "application/pkcs7-mime";
+
+    private static final String[] SUFFIXES = {".cer", ".pem", "-chain.pem", "-chain.p7c"};
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final CertificationAuthorityRegistry registry;
+    private volatile State state = new State(-1, Collections.emptyMap(), new IdentityHashMap<>(), false);
+
+    /**
+     * 构建证书链服务.
+     *
+     * @param registry CA注册表
+     */
+    public ChainBundleService(final CertificationAuthorityRegistry registry) {
+        this.registry = notNull(registry, "registry is null");
+    }
+
+    /**
+     * 按文件名获得预先编码的证书或证书链.
+     *
+     * @param fileName 文件名, 如ROOT.cer、SERVER-chain.pem
+     * @return 预先编码的内容, 不存在时返回null
+     */
+    public ChainBundle get(final String fileName) {
+        State current = state;
+        if (current.version != registry.getVersion() || current.retryDue()) {
+            current = rebuild();
+        }
+        return current.bundles.get(fileName);
+    }
+
+    private synchronized State rebuild() {
+        final long version = registry.getVersion();
+        final State current = state;
+        if (current.version == version && !current.retryDue()) {
+            return current;
+        }
+
+        final Map<String, ChainBundle> bundles = new HashMap<>();
+        final Map<CertificationAuthority, Map<String, ChainBundle>> byCa = new IdentityHashMap<>();
+        int built = 0;
+        boolean failed = false;
+        for (CertificationAuthority ca : registry.getAll()) {
+            Map<String, ChainBundle> files = current.byCa.get(ca);
+            if (files == null && ca.getCrt() == null) {
+                LOGGER.debug("no certificate, chain bundles skipped: {}", ca.getName());
+                files = Collections.emptyMap();
+            } else if (files == null) {
+                try {
+                    files = build(ca);
+                    built++;
+                } catch (IOException | CMSException | RuntimeException e) {
+                    LOGGER.error("build chain bundles failed: {}", ca.getName(), e);
+                    failed = true;
+                    bundles.putAll(previous(current, ca.getName()));
+                    continue;
+                }
+            }
+            byCa.put(ca, files);
+            bundles.putAll(files);
+        }
+        // 失败时仍记录本次尝试的版本号, 只在退避时间后重试
+        state = new State(version, bundles, byCa, failed);
+        LOGGER.debug("chain bundles of {} certification authorities rebuilt at version {}, {} reused",
+                built, version, byCa.size() - built);
+        return state;
+    }
+
+    /**
+     * 上一版中该CA的编码结果, 按文件名从上一版中取出, 以便连续失败时也能一直沿用.
+     */
+    private static Map<String, ChainBundle> previous(final State current, final String name) {
+        final Map<String, ChainBundle> files = new HashMap<>();
+        for (String suffix : SUFFIXES) {
+            final ChainBundle bundle = current.bundles.get(name + suffix);
+            if (bundle != null) {
+                files.put(name + suffix, bundle);
+            }
+        }
+        return files;
+    }
+
+    private static Map<String, ChainBundle> build(final CertificationAuthority ca) throws IOException, CMSException {
+        final String name = ca.getName();
+        final Map<String, ChainBundle> files = new HashMap<>();
+        files.put(name + ".cer", new ChainBundle(PKIX_CERT, ca.getCrt().getEncoded()));
+
+        final StringWriter cer = new StringWriter();
+        ca.writeCER(cer, null);
+        files.put(name + ".pem", new ChainBundle(PEM_FILE, bytes(cer)));
+
+        final StringWriter chain = new StringWriter();
+        ca.writeChain(chain);
+        files.put(name + "-chain.pem", new ChainBundle(PEM_CHAIN, bytes(chain)));
+
+        final List<X509CertificateHolder> holders = new ArrayList<>();
+        for (CertificationAuthority c = ca; c != null; c = c.getIssuer()) {
+            holders.add(new X509CertificateHolder(c.getCrt().getEncoded()));
+        }
+        final CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+        generator.addCertificates(new CollectionStore<>(holders));
+        files.put(name + "-chain.p7c", new ChainBundle(PKCS7_MIME,
+                generator.generate(new CMSAbsentContent()).toASN1Structure().getEncoded(ASN1Encoding.DER)));
+        return files;
+    }
+
+    private static byte[] bytes(final StringWriter writer) {
+        return writer.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class State {
+        private final long version;
+        private final Map<String, ChainBundle> bundles;
+        private final Map<CertificationAuthority, Map<String, ChainBundle>> byCa;
+        private final boolean failed;
+        private final long retryAt;
+
+        private State(final long version, final Map<String, ChainBundle> bundles,
+                      final Map<CertificationAuthority, Map<String, ChainBundle>> byCa, final boolean failed) {
+            this.version = version;
+            this.bundles = bundles;
+            this.byCa = byCa;
+            this.failed = failed;
+            this.retryAt = failed ? System.nanoTime() + RETRY_NANOS : 0;
+        }
+
+        private boolean retryDue() {
+            return failed && System.nanoTime() - retryAt >= 0;
+        }
+    }
+}
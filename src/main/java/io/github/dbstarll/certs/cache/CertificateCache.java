@@ -0,0 +1,369 @@
+package io.github.dbstarll.certs.cache;
+
+import io.github.dbstarll.certs.model.Certificate;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 已解码证书的缓存, 按SHA-256指纹和(签发者, 序列号)查找, 容量按DER编码的总字节数限制.
+ *
+ * <p>缓存按指纹分成多个段, 各段独立加锁并独立淘汰. 每段采用分段LRU(Segmented LRU): 新条目进入试用区,
+ * 再次命中后晋升到保护区(占段容量的80%), 保护区溢出的条目降回试用区; 淘汰总是从试用区的最久未用端开始,
+ * 因此一次性扫描的叶子证书不会冲掉反复使用的中间证书.</p>
+ *
+ * <p>(签发者, 序列号)索引也按段划分, 与所在段的条目在同一把锁下增删; 按序列号查找时逐段查询, 不加锁.
+ * 大于单段容量(总容量/段数)的证书不会被缓存, 计入{@link #getOversizedCount()}.</p>
+ */
+public final class CertificateCache {
+    private static final int DEFAULT_CONCURRENCY = 16;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+
+    /**
+     * 使用默认的并发度构建缓存.
+     *
+     * @param maximumBytes 缓存证书的DER编码总字节数上限
+     */
+    public CertificateCache(final long maximumBytes) {
+        this(maximumBytes, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * 构建缓存.
+     *
+     * @param maximumBytes 缓存证书的DER编码总字节数上限
+     * @param concurrency  段数, 向上取整为2的幂
+     */
+    public CertificateCache(final long maximumBytes, final int concurrency) {
+        isTrue(maximumBytes > 0, "maximumBytes must be positive: %d", maximumBytes);
+        isTrue(concurrency > 0, "concurrency must be positive: %d", concurrency);
+        final int count = concurrency == 1 ? 1 : Integer.highestOneBit(concurrency - 1) << 1;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maximumBytes / count + (i < maximumBytes % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * 解码DER编码的证书, 已缓存时直接返回缓存的对象.
+     *
+     * @param encoded DER编码的证书
+     * @return 证书
+     * @throws IOException io exception
+     */
+    public Certificate decode(final byte[] encoded) throws IOException {
+        final ByteBuffer fingerprint = fingerprint(notNull(encoded, "encoded is null"));
+        final Node node = segment(fingerprint).get(fingerprint);
+        if (node != null) {
+            hits.increment();
+            return node.certificate;
+        }
+        misses.increment();
+        return insert(fingerprint, Certificate.decode(encoded), encoded.length);
+    }
+
+    /**
+     * 读取PEM格式的证书, 已缓存时直接返回缓存的对象.
+     *
+     * @param reader 待读取的reader
+     * @return 证书
+     * @throws IOException io exception
+     */
+    public Certificate decodePEM(final Reader reader) throws IOException {
+        try (PemReader pemReader = new PemReader(reader)) {
+            final PemObject pem = pemReader.readPemObject();
+            if (pem == null) {
+                throw new IOException("no objects left");
+            }
+            return decode(pem.getContent());
+        }
+    }
+
+    /**
+     * 缓存已有的证书, 如新签发的证书.
+     *
+     * @param certificate 证书
+     * @return 缓存中的证书, 已存在相同证书时返回已缓存的对象
+     * @throws IOException io exception
+     */
+    public Certificate put(final Certificate certificate) throws IOException {
+        final byte[] encoded = notNull(certificate, "certificate is null").getEncoded();
+        return insert(fingerprint(encoded), certificate, encoded.length);
+    }
+
+    /**
+     * 按SHA-256指纹查找证书.
+     *
+     * @param fingerprint DER编码的SHA-256指纹
+     * @return 证书, 未缓存时返回null
+     */
+    public Certificate getByFingerprint(final byte[] fingerprint) {
+        return get(ByteBuffer.wrap(fingerprint));
+    }
+
+    /**
+     * 按签发者和序列号查找证书.
+     *
+     * @param issuer       签发者
+     * @param serialNumber 序列号
+     * @return 证书, 未缓存时返回null
+     */
+    public Certificate getBySerial(final X500Name issuer, final BigInteger serialNumber) {
+        final SerialKey key = new SerialKey(issuer, serialNumber);
+        for (Segment segment : segments) {
+            final Node node = segment.serials.get(key);
+            if (node != null) {
+                return get(node.fingerprint);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    private Certificate get(final ByteBuffer fingerprint) {
+        final Node node = segment(fingerprint).get(fingerprint);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return node.certificate;
+    }
+
+    private Certificate insert(final ByteBuffer fingerprint, final Certificate certificate, final int weight) {
+        return segment(fingerprint).put(new Node(fingerprint, certificate, weight)).certificate;
+    }
+
+    private Segment segment(final ByteBuffer fingerprint) {
+        return segments[fingerprint.getInt(0) & (segments.length - 1)];
+    }
+
+    private static ByteBuffer fingerprint(final byte[] encoded) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(encoded));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 当前缓存的条目数.
+     *
+     * @return 条目数
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 当前缓存证书的DER编码总字节数.
+     *
+     * @return 总字节数
+     */
+    public long getWeightedSize() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    /**
+     * get hit count.
+     *
+     * @return hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * get miss count.
+     *
+     * @return miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 命中率, 没有请求时为0.
+     *
+     * @return 命中率
+     */
+    public double getHitRate() {
+        final long hit = hits.sum();
+        final long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * get eviction count.
+     *
+     * @return eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * get total bytes of evicted certificates.
+     *
+     * @return total bytes of evicted certificates
+     */
+    public long getEvictedBytes() {
+        return evictedBytes.sum();
+    }
+
+    /**
+     * 因大于单段容量而未被缓存的证书数.
+     *
+     * @return 未被缓存的证书数
+     */
+    public long getOversizedCount() {
+        return oversized.sum();
+    }
+
+    private final class Segment {
+        private final long capacity;
+        private final long protectedCapacity;
+        private final LinkedHashMap<ByteBuffer, Node> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<ByteBuffer, Node> protect = new LinkedHashMap<>(16, 0.75f, true);
+        // 只在段锁内修改, 读取无需加锁
+        private final Map<SerialKey, Node> serials = new ConcurrentHashMap<>();
+        private long probationWeight;
+        private long protectedWeight;
+
+        private Segment(final long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = capacity * PROTECTED_PERCENT / 100;
+        }
+
+        private synchronized Node get(final ByteBuffer fingerprint) {
+            Node node = protect.get(fingerprint);
+            if (node == null) {
+                node = probation.remove(fingerprint);
+                if (node != null) {
+                    probationWeight -= node.weight;
+                    protect.put(fingerprint, node);
+                    protectedWeight += node.weight;
+                    demote();
+                }
+            }
+            return node;
+        }
+
+        private synchronized Node put(final Node node) {
+            final Node existing = get(node.fingerprint);
+            if (existing != null) {
+                return existing;
+            } else if (node.weight > capacity) {
+                oversized.increment();
+                return node;
+            }
+            probation.put(node.fingerprint, node);
+            probationWeight += node.weight;
+            serials.put(node.serial, node);
+            while (probationWeight + protectedWeight > capacity) {
+                final Map<ByteBuffer, Node> victims = probation.isEmpty() ? protect : probation;
+                final Iterator<Node> iterator = victims.values().iterator();
+                final Node victim = iterator.next();
+                iterator.remove();
+                if (victims == probation) {
+                    probationWeight -= victim.weight;
+                } else {
+                    protectedWeight -= victim.weight;
+                }
+                serials.remove(victim.serial, victim);
+                evictions.increment();
+                evictedBytes.add(victim.weight);
+            }
+            return node;
+        }
+
+        private void demote() {
+            final Iterator<Node> iterator = protect.values().iterator();
+            while (protectedWeight > protectedCapacity && iterator.hasNext()) {
+                final Node node = iterator.next();
+                iterator.remove();
+                protectedWeight -= node.weight;
+                probation.put(node.fingerprint, node);
+                probationWeight += node.weight;
+            }
+        }
+
+        private synchronized int size() {
+            return probation.size() + protect.size();
+        }
+
+        private synchronized long weight() {
+            return probationWeight + protectedWeight;
+        }
+    }
+
+    private static final class Node {
+        private final ByteBuffer fingerprint;
+        private final Certificate certificate;
+        private final SerialKey serial;
+        private final int weight;
+
+        private Node(final ByteBuffer fingerprint, final Certificate certificate, final int weight) {
+            this.fingerprint = fingerprint;
+            this.certificate = certificate;
+            this.serial = new SerialKey(certificate.getIssuer(), certificate.getSerialNumber());
+            this.weight = weight;
+        }
+    }
+
+    private static final class SerialKey {
+        private final X500Name issuer;
+        private final BigInteger serialNumber;
+
+        private SerialKey(final X500Name issuer, final BigInteger serialNumber) {
+            this.issuer = notNull(issuer, "issuer is null");
+            this.serialNumber = notNull(serialNumber, "serialNumber is null");
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof SerialKey)) {
+                return false;
+            }
+            final SerialKey other = (SerialKey) o;
+            return serialNumber.equals(other.serialNumber) && issuer.equals(other.issuer);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * issuer.hashCode() + serialNumber.hashCode();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.dbstarll.certs.issuance;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.operator.OperatorCreationException;
+
+import java.io.IOException;
+
+/**
+ * 证书签发路径, 默认实现为{@link Certificate#generate(CertificateSigningRequest, CertificationAuthority,
+ * SignatureAlgorithm)}, 可以逐层包装缓存、调度等功能.
+ */
+@FunctionalInterface
+public interface CertificateIssuer {
+    /**
+     * 直接调用Certificate.generate的签发路径.
+     */
+    CertificateIssuer DIRECT = Certificate::generate;
+
+    /**
+     * 签发证书.
+     *
+     * @param csr                the Certificate Signing Request
+     * @param issuer             签发者
+     * @param signatureAlgorithm 签名算法
+     * @return 已签发的证书
+     * @throws IOException               IOException
+     * @throws OperatorCreationException OperatorCreationException
+     */
+    Certificate issue(CertificateSigningRequest csr, CertificationAuthority issuer,
+                      SignatureAlgorithm signatureAlgorithm) throws IOException, OperatorCreationException;
+}
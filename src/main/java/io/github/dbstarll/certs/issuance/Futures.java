@@ -0,0 +1,41 @@
+package io.github.dbstarll.certs.issuance;
+
+import io.github.dbstarll.certs.model.Certificate;
+import org.bouncycastle.operator.OperatorCreationException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+final class Futures {
+    private Futures() {
+        // 禁止实例化
+    }
+
+    /**
+     * 等待签发结果, 并还原签发路径抛出的原始异常.
+     *
+     * @param future 签发结果
+     * @return 已签发的证书
+     * @throws IOException               IOException
+     * @throws OperatorCreationException OperatorCreationException
+     */
+    static Certificate await(final CompletableFuture<Certificate> future)
+            throws IOException, OperatorCreationException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof OperatorCreationException) {
+                throw (OperatorCreationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
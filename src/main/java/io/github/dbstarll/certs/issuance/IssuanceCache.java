@@ -0,0 +1,182 @@
+package io.github.dbstarll.certs.issuance;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.operator.OperatorCreationException;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 幂等签发: 在时间窗口内, 相同CSR(按SHA-256指纹)、签发者与签名算法的请求返回同一个已签发的证书,
+ * 并发的重复请求合并为一次签名.
+ *
+ * <p>条目按创建顺序进入FIFO队列, 超出容量或超出时间窗口的条目从队首淘汰. 进行中的条目不会被淘汰,
+ * 否则并发的重复请求会再次签名, 因此进行中的签名较多时缓存可能暂时超出容量. 签发失败的条目立即移除,
+ * 以便客户端重试.</p>
+ */
+public final class IssuanceCache implements CertificateIssuer {
+    private final CertificateIssuer delegate;
+    private final int maxSize;
+    private final long windowNanos;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * 构建幂等签发缓存.
+     *
+     * @param delegate     实际的签发路径
+     * @param maxSize      最多缓存的条目数
+     * @param windowMillis 重复请求返回同一证书的时间窗口(毫秒)
+     */
+    public IssuanceCache(final CertificateIssuer delegate, final int maxSize, final long windowMillis) {
+        isTrue(maxSize > 0, "maxSize must be positive: %d", maxSize);
+        isTrue(windowMillis > 0, "windowMillis must be positive: %d", windowMillis);
+        this.delegate = notNull(delegate, "delegate is null");
+        this.maxSize = maxSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    @Override
+    public Certificate issue(final CertificateSigningRequest csr, final CertificationAuthority issuer,
+                             final SignatureAlgorithm signatureAlgorithm)
+            throws IOException, OperatorCreationException {
+        final Key key = new Key(fingerprint(csr.getEncoded()), issuer, signatureAlgorithm);
+        final long now = System.nanoTime();
+        final Entry candidate = new Entry(key, now);
+        final Entry entry = entries.merge(key, candidate,
+                (existing, created) -> existing.isExpired(now, windowNanos) ? created : existing);
+        if (entry != candidate) {
+            hits.increment();
+            return Futures.await(entry.future);
+        }
+
+        misses.increment();
+        order.add(entry);
+        evict(now);
+        try {
+            final Certificate certificate = delegate.issue(csr, issuer, signatureAlgorithm);
+            entry.future.complete(certificate);
+            return certificate;
+        } catch (IOException | OperatorCreationException | RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void evict(final long now) {
+        final Iterator<Entry> iterator = order.iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (!entry.future.isDone()) {
+                continue;
+            } else if (entries.size() <= maxSize && !entry.isExpired(now, windowNanos)) {
+                break;
+            }
+            iterator.remove();
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private static byte[] fingerprint(final byte[] encoded) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(encoded);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 当前缓存的条目数.
+     *
+     * @return 条目数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 命中缓存(含合并到进行中签名)的请求数.
+     *
+     * @return 命中数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 实际执行签名的请求数.
+     *
+     * @return 未命中数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private static final class Key {
+        private final byte[] csrFingerprint;
+        private final CertificationAuthority issuer;
+        private final SignatureAlgorithm signatureAlgorithm;
+        private final int hash;
+
+        private Key(final byte[] csrFingerprint, final CertificationAuthority issuer,
+                    final SignatureAlgorithm signatureAlgorithm) {
+            this.csrFingerprint = csrFingerprint;
+            this.issuer = issuer;
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.hash = 31 * (31 * Arrays.hashCode(csrFingerprint) + System.identityHashCode(issuer))
+                    + signatureAlgorithm.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            // 续期后的CA是新的对象, 不会复用旧CA签发的证书
+            return issuer == key.issuer && signatureAlgorithm == key.signatureAlgorithm
+                    && Arrays.equals(csrFingerprint, key.csrFingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final long createdAt;
+        private final CompletableFuture<Certificate> future = new CompletableFuture<>();
+
+        private Entry(final Key key, final long createdAt) {
+            this.key = key;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isExpired(final long now, final long windowNanos) {
+            return future.isDone() && now - createdAt > windowNanos;
+        }
+    }
+}
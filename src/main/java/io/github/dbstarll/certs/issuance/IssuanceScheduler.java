@@ -0,0 +1,356 @@
+package io.github.dbstarll.certs.issuance;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.operator.OperatorCreationException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 按租户公平调度的签发器.
+ *
+ * <p>每个租户一个队列, 固定数量的签名线程按加权差额轮询(Deficit Round Robin)从活跃租户中出队:
+ * 每轮每个租户最多出队与其权重相同数量的请求. 每个租户另有令牌桶限速, 令牌不足的租户在本轮被跳过,
+ * 不占用共享的签名能力. 未指定租户时以签发CA的名称作为租户.</p>
+ *
+ * <p>未经configure配置的租户在首次提交时按默认参数创建; 租户数超过上限时, 清理其中队列为空且令牌桶已满的租户,
+ * 其统计随之清零, 因此租户表不会随一次性出现的租户名无限增长.</p>
+ */
+public final class IssuanceScheduler implements CertificateIssuer, Closeable {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_TENANTS = 1024;
+
+    private final CertificateIssuer delegate;
+    private final int defaultWeight;
+    private final double defaultRate;
+    private final int defaultBurst;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private final List<Tenant> active = new ArrayList<>();
+    private final Thread[] workers;
+    private int cursor;
+    private int sweepThreshold = MAX_TENANTS;
+    private boolean closed;
+
+    /**
+     * 构建调度器, 租户默认权重为1且不限速.
+     *
+     * @param delegate 实际的签发路径
+     * @param threads  签名线程数
+     */
+    public IssuanceScheduler(final CertificateIssuer delegate, final int threads) {
+        this(delegate, threads, 1, Double.POSITIVE_INFINITY, 1);
+    }
+
+    /**
+     * 构建调度器.
+     *
+     * @param delegate      实际的签发路径
+     * @param threads       签名线程数
+     * @param defaultWeight 租户的默认权重
+     * @param defaultRate   租户的默认限速(每秒请求数), Double.POSITIVE_INFINITY表示不限速
+     * @param defaultBurst  租户的默认令牌桶容量
+     */
+    public IssuanceScheduler(final CertificateIssuer delegate, final int threads, final int defaultWeight,
+                             final double defaultRate, final int defaultBurst) {
+        isTrue(threads > 0, "threads must be positive: %d", threads);
+        validate(defaultWeight, defaultRate, defaultBurst);
+        this.delegate = notNull(delegate, "delegate is null");
+        this.defaultWeight = defaultWeight;
+        this.defaultRate = defaultRate;
+        this.defaultBurst = defaultBurst;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "issuance-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    private static void validate(final int weight, final double rate, final int burst) {
+        isTrue(weight > 0, "weight must be positive: %d", weight);
+        isTrue(rate > 0, "rate must be positive: %f", rate);
+        isTrue(burst > 0, "burst must be positive: %d", burst);
+    }
+
+    /**
+     * 设置租户的权重与限速.
+     *
+     * @param tenant        租户
+     * @param weight        权重, 每轮最多出队的请求数
+     * @param ratePerSecond 限速(每秒请求数), Double.POSITIVE_INFINITY表示不限速
+     * @param burst         令牌桶容量
+     */
+    public void configure(final String tenant, final int weight, final double ratePerSecond, final int burst) {
+        validate(weight, ratePerSecond, burst);
+        lock.lock();
+        try {
+            final Tenant t = tenant(notNull(tenant, "tenant is null"));
+            t.configure(weight, ratePerSecond, burst);
+            t.configured = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Certificate issue(final CertificateSigningRequest csr, final CertificationAuthority issuer,
+                             final SignatureAlgorithm signatureAlgorithm)
+            throws IOException, OperatorCreationException {
+        return Futures.await(submit(issuer.getName(), csr, issuer, signatureAlgorithm));
+    }
+
+    /**
+     * 以指定租户的身份提交签发请求.
+     *
+     * @param tenant             租户
+     * @param csr                the Certificate Signing Request
+     * @param issuer             签发者
+     * @param signatureAlgorithm 签名算法
+     * @return 签发结果
+     */
+    public CompletableFuture<Certificate> submit(final String tenant, final CertificateSigningRequest csr,
+                                                 final CertificationAuthority issuer,
+                                                 final SignatureAlgorithm signatureAlgorithm) {
+        final Task task = new Task(notNull(csr, "csr is null"), notNull(issuer, "issuer is null"),
+                notNull(signatureAlgorithm, "signatureAlgorithm is null"));
+        lock.lock();
+        try {
+            if (closed) {
+                task.future.completeExceptionally(new IllegalStateException("scheduler closed"));
+            } else {
+                final Tenant t = tenant(notNull(tenant, "tenant is null"));
+                t.queue.add(task);
+                if (!t.active) {
+                    t.active = true;
+                    active.add(t);
+                }
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return task.future;
+    }
+
+    /**
+     * 各租户的统计快照.
+     *
+     * @return 租户 -&gt; 统计快照
+     */
+    public Map<String, TenantStats> stats() {
+        final Map<String, TenantStats> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            final long now = System.nanoTime();
+            for (Tenant t : tenants.values()) {
+                final Task head = t.queue.peek();
+                stats.put(t.name, new TenantStats(t.name, t.queue.size(), t.completed, t.throttled,
+                        t.totalQueueDelay, t.maxQueueDelay, head == null ? 0 : now - head.submittedAt));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    private Tenant tenant(final String name) {
+        Tenant t = tenants.get(name);
+        if (t == null) {
+            if (tenants.size() >= sweepThreshold) {
+                sweep();
+            }
+            t = new Tenant(name, defaultWeight, defaultRate, defaultBurst);
+            tenants.put(name, t);
+        }
+        return t;
+    }
+
+    /**
+     * 清理空闲的默认租户, 清理后仍超过上限时提高下次清理的门槛, 使清理的开销均摊到每次创建租户上.
+     */
+    private void sweep() {
+        final long now = System.nanoTime();
+        tenants.values().removeIf(t -> !t.active && !t.configured && t.isFull(now));
+        sweepThreshold = Math.max(MAX_TENANTS, tenants.size() * 2);
+    }
+
+    private void work() {
+        Task task;
+        while ((task = next()) != null) {
+            try {
+                task.future.complete(delegate.issue(task.csr, task.issuer, task.signatureAlgorithm));
+            } catch (Exception | Error e) {
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private Task next() {
+        lock.lock();
+        try {
+            while (!closed) {
+                final long now = System.nanoTime();
+                long wait = Long.MAX_VALUE;
+                for (int step = active.size(); step > 0; step--) {
+                    if (cursor >= active.size()) {
+                        cursor = 0;
+                    }
+                    final Tenant t = active.get(cursor);
+                    if (!t.tryAcquire(now)) {
+                        final Task head = t.queue.peek();
+                        if (!head.throttled) {
+                            // 每个请求只在首次遇到空令牌桶时计数一次
+                            head.throttled = true;
+                            t.throttled++;
+                        }
+                        wait = Math.min(wait, t.nanosUntilToken());
+                        cursor++;
+                        continue;
+                    }
+                    if (t.deficit < 1) {
+                        t.deficit += t.weight;
+                    }
+                    t.deficit--;
+                    final Task task = t.queue.poll();
+                    if (t.queue.isEmpty()) {
+                        active.remove(cursor);
+                        t.active = false;
+                        t.deficit = 0;
+                    } else if (t.deficit < 1) {
+                        cursor++;
+                    }
+                    final long delay = now - task.submittedAt;
+                    t.completed++;
+                    t.totalQueueDelay += delay;
+                    t.maxQueueDelay = Math.max(t.maxQueueDelay, delay);
+                    return task;
+                }
+                if (wait == Long.MAX_VALUE) {
+                    available.await();
+                } else {
+                    available.awaitNanos(wait);
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            for (Tenant t : active) {
+                Task task;
+                while ((task = t.queue.poll()) != null) {
+                    task.future.completeExceptionally(new IllegalStateException("scheduler closed"));
+                }
+                t.active = false;
+            }
+            active.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while closing scheduler", e);
+        }
+    }
+
+    private static final class Tenant {
+        private final String name;
+        private final Queue<Task> queue = new ArrayDeque<>();
+        private int weight;
+        private double ratePerNano;
+        private int burst;
+        private double tokens;
+        private long refilledAt;
+        private int deficit;
+        private boolean active;
+        private boolean configured;
+        private long completed;
+        private long throttled;
+        private long totalQueueDelay;
+        private long maxQueueDelay;
+
+        private Tenant(final String name, final int weight, final double ratePerSecond, final int burst) {
+            this.name = name;
+            this.refilledAt = System.nanoTime();
+            configure(weight, ratePerSecond, burst);
+            this.tokens = burst;
+        }
+
+        private void configure(final int newWeight, final double ratePerSecond, final int newBurst) {
+            this.weight = newWeight;
+            this.ratePerNano = ratePerSecond / NANOS_PER_SECOND;
+            this.burst = newBurst;
+            this.tokens = Math.min(tokens, newBurst);
+        }
+
+        private boolean tryAcquire(final long now) {
+            if (Double.isInfinite(ratePerNano)) {
+                return true;
+            }
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isFull(final long now) {
+            return Double.isInfinite(ratePerNano) || tokens + (now - refilledAt) * ratePerNano >= burst;
+        }
+
+        private long nanosUntilToken() {
+            return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerNano));
+        }
+    }
+
+    private static final class Task {
+        private final CertificateSigningRequest csr;
+        private final CertificationAuthority issuer;
+        private final SignatureAlgorithm signatureAlgorithm;
+        private final long submittedAt = System.nanoTime();
+        private final CompletableFuture<Certificate> future = new CompletableFuture<>();
+        private boolean throttled;
+
+        private Task(final CertificateSigningRequest csr, final CertificationAuthority issuer,
+                     final SignatureAlgorithm signatureAlgorithm) {
+            this.csr = csr;
+            this.issuer = issuer;
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.dbstarll.certs.issuance;
+
+/**
+ * 单个租户在签发调度器中的统计快照.
+ */
+public final class TenantStats {
+    private final String tenant;
+    private final int queued;
+    private final long completed;
+    private final long throttled;
+    private final long totalQueueDelayNanos;
+    private final long maxQueueDelayNanos;
+    private final long starvationNanos;
+
+    TenantStats(final String tenant, final int queued, final long completed, final long throttled,
+                final long totalQueueDelayNanos, final long maxQueueDelayNanos, final long starvationNanos) {
+        this.tenant = tenant;
+        this.queued = queued;
+        this.completed = completed;
+        this.throttled = throttled;
+        this.totalQueueDelayNanos = totalQueueDelayNanos;
+        this.maxQueueDelayNanos = maxQueueDelayNanos;
+        this.starvationNanos = starvationNanos;
+    }
+
+    /**
+     * get tenant.
+     *
+     * @return tenant
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * 排队中的请求数.
+     *
+     * @return 排队中的请求数
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * 已出队执行的请求数.
+     *
+     * @return 已出队执行的请求数
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * 因令牌桶为空而被限流的请求数, 每个请求最多计数一次.
+     *
+     * @return 被限流的请求数
+     */
+    public long getThrottled() {
+        return throttled;
+    }
+
+    /**
+     * 已出队请求的平均排队时间(纳秒).
+     *
+     * @return 平均排队时间
+     */
+    public long getAverageQueueDelayNanos() {
+        return completed == 0 ? 0 : totalQueueDelayNanos / completed;
+    }
+
+    /**
+     * 已出队请求的最大排队时间(纳秒).
+     *
+     * @return 最大排队时间
+     */
+    public long getMaxQueueDelayNanos() {
+        return maxQueueDelayNanos;
+    }
+
+    /**
+     * 队首请求已等待的时间(纳秒), 队列为空时为0.
+     *
+     * @return 队首请求已等待的时间
+     */
+    public long getStarvationNanos() {
+        return starvationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantStats{tenant=" + tenant + ", queued=" + queued + ", completed=" + completed
+                + ", throttled=" + throttled + ", averageQueueDelayNanos=" + getAverageQueueDelayNanos()
+                + ", maxQueueDelayNanos=" + maxQueueDelayNanos + ", starvationNanos=" + starvationNanos + '}';
+    }
+}
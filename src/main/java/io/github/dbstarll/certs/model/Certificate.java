@@ -3,15 +3,20 @@ package io.github.dbstarll.certs.model;
 import io.github.dbstarll.certs.utils.SecureRandomUtils;
 import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
 import org.apache.commons.lang3.time.DateUtils;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.*;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.bc.BcX509ExtensionUtils;
 import org.bouncycastle.openssl.PEMEncryptor;
+import org.bouncycastle.openssl.PEMException;
+import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 import org.bouncycastle.operator.OperatorCreationException;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
 import java.io.Writer;
 import java.math.BigInteger;
@@ -28,6 +33,86 @@ public final class Certificate implements Serializable {
         this.certificateHolder = certificateHolder;
     }
 
+    /**
+     * get serial number.
+     *
+     * @return serial number
+     */
+    public BigInteger getSerialNumber() {
+        return certificateHolder.getSerialNumber();
+    }
+
+    /**
+     * get subject.
+     *
+     * @return subject
+     */
+    public X500Name getSubject() {
+        return certificateHolder.getSubject();
+    }
+
+    /**
+     * get issuer.
+     *
+     * @return issuer
+     */
+    public X500Name getIssuer() {
+        return certificateHolder.getIssuer();
+    }
+
+    /**
+     * 获得主体密钥标识(Subject Key Identifier), 未包含该扩展时按RFC 5280 4.2.1.2的方法(1)由公钥计算.
+     *
+     * @return 主体密钥标识
+     */
+    public byte[] getSubjectKeyIdentifier() {
+        final Extensions extensions = certificateHolder.getExtensions();
+        final SubjectKeyIdentifier ski = extensions == null ? null : SubjectKeyIdentifier.fromExtensions(extensions);
+        if (ski != null) {
+            return ski.getKeyIdentifier();
+        }
+        return new BcX509ExtensionUtils().createSubjectKeyIdentifier(certificateHolder.getSubjectPublicKeyInfo())
+                .getKeyIdentifier();
+    }
+
+    /**
+     * get the date before which this certificate is not valid.
+     *
+     * @return notBefore
+     */
+    public Date getNotBefore() {
+        return certificateHolder.getNotBefore();
+    }
+
+    /**
+     * get the date after which this certificate is not valid.
+     *
+     * @return notAfter
+     */
+    public Date getNotAfter() {
+        return certificateHolder.getNotAfter();
+    }
+
+    /**
+     * 获得SAN(Subject Alternative Name), 未包含SAN扩展时返回null.
+     *
+     * @return SAN(Subject Alternative Name)
+     */
+    public GeneralNames getSubjectAlternativeNames() {
+        final Extensions extensions = certificateHolder.getExtensions();
+        return extensions == null ? null : GeneralNames.fromExtensions(extensions, Extension.subjectAlternativeName);
+    }
+
+    /**
+     * 获得DER编码的证书.
+     *
+     * @return DER编码的证书
+     * @throws IOException io exception
+     */
+    public byte[] getEncoded() throws IOException {
+        return certificateHolder.getEncoded();
+    }
+
     /**
      * 写入POM格式的证书.
      *
@@ -41,6 +126,56 @@ public final class Certificate implements Serializable {
         }
     }
 
+    void writePEM(final JcaPEMWriter writer) throws IOException {
+        writer.writeObject(certificateHolder);
+    }
+
+    /**
+     * 从DER编码构建证书.
+     *
+     * @param encoded DER编码的证书
+     * @return 证书
+     * @throws IOException io exception
+     */
+    public static Certificate decode(final byte[] encoded) throws IOException {
+        return new Certificate(new X509CertificateHolder(encoded));
+    }
+
+    /**
+     * 读取POM格式的证书.
+     *
+     * @param reader 待读取的reader
+     * @return 证书
+     * @throws IOException io exception
+     */
+    public static Certificate readPEM(final Reader reader) throws IOException {
+        try (PEMParser parser = new PEMParser(reader)) {
+            final Object obj = parser.readObject();
+            if (obj == null) {
+                throw new PEMException("no objects left");
+            } else if (obj instanceof X509CertificateHolder) {
+                return new Certificate((X509CertificateHolder) obj);
+            } else {
+                throw new PEMException("not a Certificate");
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        } else if (!(o instanceof Certificate)) {
+            return false;
+        }
+        return certificateHolder.equals(((Certificate) o).certificateHolder);
+    }
+
+    @Override
+    public int hashCode() {
+        return certificateHolder.hashCode();
+    }
+
     /**
      * 构建一个已签发的证书.
      *
@@ -77,6 +212,39 @@ public final class Certificate implements Serializable {
         return generate(csr, issuer.toX500Name(), issuerPrivateKey, signatureAlgorithm);
     }
 
+    /**
+     * 由新的签发者重新签发本证书: 保留主体、公钥和扩展, 只替换签发者、授权密钥标识、序列号和有效期,
+     * 新有效期从notBefore开始, 长度与原证书相同.
+     *
+     * @param issuer             新的签发者
+     * @param signatureAlgorithm 签名算法
+     * @param notBefore          新的生效时间
+     * @return 重新签发的证书
+     * @throws IOException               IOException
+     * @throws OperatorCreationException OperatorCreationException
+     */
+    public Certificate resign(final CertificationAuthority issuer, final SignatureAlgorithm signatureAlgorithm,
+                              final Date notBefore) throws IOException, OperatorCreationException {
+        final Certificate issuerCrt = issuer.getCrt();
+        final BigInteger serial = BigInteger.valueOf(SecureRandomUtils.get().nextLong());
+        final Date notAfter = new Date(notBefore.getTime() + getNotAfter().getTime() - getNotBefore().getTime());
+        final X509v3CertificateBuilder builder = new X509v3CertificateBuilder(issuerCrt.getSubject(), serial,
+                notBefore, notAfter, certificateHolder.getSubject(), certificateHolder.getSubjectPublicKeyInfo());
+
+        final Extensions extensions = certificateHolder.getExtensions();
+        if (extensions != null) {
+            for (ASN1ObjectIdentifier oid : extensions.getExtensionOIDs()) {
+                if (!Extension.authorityKeyIdentifier.equals(oid)) {
+                    builder.addExtension(extensions.getExtension(oid));
+                }
+            }
+        }
+        builder.addExtension(Extension.authorityKeyIdentifier, false,
+                new AuthorityKeyIdentifier(issuerCrt.getSubjectKeyIdentifier()));
+
+        return new Certificate(builder.build(signer(signatureAlgorithm, issuer.getKeyPair().getPrivate())));
+    }
+
     private static Certificate generate(final CertificateSigningRequest csr,
                                         final X500Name issuer, final PrivateKey issuerPrivateKey,
                                         final SignatureAlgorithm signatureAlgorithm)
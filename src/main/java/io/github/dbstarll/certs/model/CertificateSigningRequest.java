@@ -51,6 +51,16 @@ public final class CertificateSigningRequest {
         return certificateBuilder;
     }
 
+    /**
+     * 获得DER编码的证书签发申请.
+     *
+     * @return DER编码的证书签发申请
+     * @throws IOException io exception
+     */
+    public byte[] getEncoded() throws IOException {
+        return certificationRequest.getEncoded();
+    }
+
     /**
      * 写入POM格式的证书签发申请.
      *
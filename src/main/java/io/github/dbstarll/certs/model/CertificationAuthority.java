@@ -14,6 +14,7 @@ public final class CertificationAuthority implements Serializable {
     private final Subject subject;
     private final CertificateSigningRequest csr;
     private final Certificate crt;
+    private final CertificationAuthority issuer;
 
     /**
      * 构建CertificationAuthority对象.
@@ -29,14 +30,39 @@ public final class CertificationAuthority implements Serializable {
                                   final Subject subject,
                                   final CertificateSigningRequest csr,
                                   final Certificate crt) {
+        this(name, keyPair, subject, csr, crt, null);
+    }
+
+    /**
+     * 构建CertificationAuthority对象.
+     *
+     * @param name    name of ca
+     * @param keyPair key pair (a public key and a private key)
+     * @param subject subject
+     * @param csr     the PKCS#10 certification request.
+     * @param crt     the Certificate.
+     * @param issuer  Issuer, The parent certificate, null for self-signed root
+     */
+    public CertificationAuthority(final String name,
+                                  final KeyPair keyPair,
+                                  final Subject subject,
+                                  final CertificateSigningRequest csr,
+                                  final Certificate crt,
+                                  final CertificationAuthority issuer) {
         this.name = name;
         this.keyPair = keyPair;
         this.subject = subject;
         this.csr = csr;
         this.crt = crt;
+        this.issuer = issuer;
     }
 
-    String getName() {
+    /**
+     * get name of ca.
+     *
+     * @return name of ca
+     */
+    public String getName() {
         return name;
     }
 
@@ -52,10 +78,34 @@ public final class CertificationAuthority implements Serializable {
         return csr;
     }
 
-    Certificate getCrt() {
+    /**
+     * get the Certificate.
+     *
+     * @return the Certificate
+     */
+    public Certificate getCrt() {
         return crt;
     }
 
+    /**
+     * get issuer, null for self-signed root.
+     *
+     * @return issuer
+     */
+    public CertificationAuthority getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * 构建一个仅签发者不同的CertificationAuthority对象, 用于上级CA续期后重新链接.
+     *
+     * @param newIssuer 新的签发者, null for self-signed root
+     * @return CertificationAuthority
+     */
+    public CertificationAuthority withIssuer(final CertificationAuthority newIssuer) {
+        return new CertificationAuthority(name, keyPair, subject, csr, crt, newIssuer);
+    }
+
     /**
      * 写入POM格式的证书私钥.
      *
@@ -90,4 +140,18 @@ public final class CertificationAuthority implements Serializable {
     public void writeCER(final Writer out, final PEMEncryptor encryptor) throws IOException {
         crt.writePEM(out, encryptor);
     }
+
+    /**
+     * 写入POM格式的证书链, 从本证书开始依次到根证书.
+     *
+     * @param out 待写入的writer
+     * @throws IOException io exception
+     */
+    public void writeChain(final Writer out) throws IOException {
+        try (JcaPEMWriter writer = new JcaPEMWriter(out)) {
+            for (CertificationAuthority ca = this; ca != null; ca = ca.issuer) {
+                ca.crt.writePEM(writer);
+            }
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package io.github.dbstarll.certs.publish;
+
+/**
+ * CA目录($CA_HOME/$CA_NAME)下的产物类型.
+ */
+public enum ArtifactType {
+    /**
+     * 证书私钥: $CA_NAME.key.
+     */
+    KEY(".key", true),
+    /**
+     * 证书签发申请: $CA_NAME.csr.
+     */
+    CSR(".csr", false),
+    /**
+     * 证书: $CA_NAME.cer.
+     */
+    CER(".cer", false),
+    /**
+     * 证书链: $CA_NAME-chain.cer.
+     */
+    CHAIN("-chain.cer", false),
+    /**
+     * 证书吊销列表: $CA_NAME.crl.
+     */
+    CRL(".crl", false);
+
+    private final String suffix;
+    private final boolean secret;
+
+    ArtifactType(final String suffix, final boolean secret) {
+        this.suffix = suffix;
+        this.secret = secret;
+    }
+
+    /**
+     * 获得指定CA的产物文件名.
+     *
+     * @param caName name of ca
+     * @return 产物文件名
+     */
+    public String fileName(final String caName) {
+        return caName + suffix;
+    }
+
+    /**
+     * 是否为需要限制访问权限的机密产物.
+     *
+     * @return 是否为机密产物
+     */
+    public boolean isSecret() {
+        return secret;
+    }
+}
@@ -0,0 +1,472 @@
+package io.github.dbstarll.certs.publish;
+
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import org.bouncycastle.openssl.PEMEncryptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.matchesPattern;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 将CA产物发布到$CA_HOME/$CA_NAME目录的发布器.
+ *
+ * <p>每个文件先写入同目录下的临时文件再原子重命名, 读者只会看到完整的旧文件或新文件.
+ * 并发提交的产物由单个提交线程合并成组(group commit): 整组产物先追加到$CA_HOME/.publish.journal并只fsync一次,
+ * 再逐个重命名, 之后即视为已落盘; 各个文件本身不在提交路径上fsync.</p>
+ *
+ * <p>日志超过阈值或提交线程空闲时做检查点: 在线程池中并行fsync上次检查点以来重命名过的文件(同一文件只一次),
+ * 每个目录fsync一次, 然后清空日志. 崩溃后再次构建发布器时重放日志中校验和完整的记录, 恢复未做检查点的文件.
+ * 组内某个产物写入或重命名失败时, 只有该产物以失败结束.</p>
+ */
+public final class FileSystemPublisher implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSystemPublisher.class);
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 512;
+    private static final long DEFAULT_LINGER_MILLIS = 2;
+    private static final int DEFAULT_SYNC_PARALLELISM = 8;
+    private static final long CHECKPOINT_BYTES = 16 * 1024 * 1024;
+    private static final String JOURNAL = ".publish.journal";
+    private static final Set<StandardOpenOption> CREATE_NEW = EnumSet.of(StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.WRITE);
+    private static final Set<StandardOpenOption> JOURNAL_OPTIONS = EnumSet.of(StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    private static final FileAttribute<?>[] NO_ATTRIBUTES = new FileAttribute<?>[0];
+    private static final FileAttribute<?>[] OWNER_ONLY = new FileAttribute<?>[]{
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))};
+
+    private final Path caHome;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final boolean posix;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService syncer;
+    private final Thread committer;
+    private final Object lock = new Object();
+    /**
+     * 日志和检查点以来重命名过的文件只由提交线程访问(构建时和close时除外).
+     */
+    private final FileChannel journal;
+    private final Set<Path> unsynced = new LinkedHashSet<>();
+    private volatile boolean closed;
+
+    /**
+     * 使用默认的分组参数构建发布器.
+     *
+     * @param caHome CA根目录
+     * @throws IOException 创建目录、打开或重放日志失败时抛出
+     */
+    public FileSystemPublisher(final Path caHome) throws IOException {
+        this(caHome, DEFAULT_MAX_BATCH_SIZE, DEFAULT_LINGER_MILLIS, DEFAULT_SYNC_PARALLELISM);
+    }
+
+    /**
+     * 构建发布器, 重放上次未做检查点的日志.
+     *
+     * @param caHome          CA根目录
+     * @param maxBatchSize    每组最多提交的产物数
+     * @param lingerMillis    组内等待后续产物的最长时间(毫秒)
+     * @param syncParallelism 检查点时并行fsync的线程数
+     * @throws IOException 创建目录、打开或重放日志失败时抛出
+     */
+    public FileSystemPublisher(final Path caHome, final int maxBatchSize, final long lingerMillis,
+                               final int syncParallelism) throws IOException {
+        isTrue(maxBatchSize > 0, "maxBatchSize must be positive: %d", maxBatchSize);
+        isTrue(lingerMillis >= 0, "lingerMillis must not be negative: %d", lingerMillis);
+        isTrue(syncParallelism > 0, "syncParallelism must be positive: %d", syncParallelism);
+        this.caHome = Files.createDirectories(notNull(caHome, "caHome is null"));
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.posix = caHome.getFileSystem().supportedFileAttributeViews().contains("posix");
+        // 日志中包含私钥, 与私钥文件一样只允许属主访问
+        this.journal = FileChannel.open(caHome.resolve(JOURNAL), JOURNAL_OPTIONS, posix ? OWNER_ONLY : NO_ATTRIBUTES);
+        try {
+            replay();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        final AtomicInteger threads = new AtomicInteger();
+        this.syncer = Executors.newFixedThreadPool(syncParallelism, r -> {
+            final Thread thread = new Thread(r, "publisher-sync-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.committer = new Thread(this::commitLoop, "publisher-commit");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * 发布一个产物.
+     *
+     * @param caName  name of ca
+     * @param type    产物类型
+     * @param content 产物内容
+     * @return 产物落盘并重命名完成后结束的Future
+     */
+    public CompletableFuture<Void> publish(final String caName, final ArtifactType type, final byte[] content) {
+        final Pending pending = new Pending(resolve(caName, notNull(type, "type is null")), type.isSecret(),
+                notNull(content, "content is null"));
+        synchronized (lock) {
+            // 与close互斥, 入队的产物一定会被提交线程或close处理
+            if (closed) {
+                pending.future.completeExceptionally(new IllegalStateException("publisher closed"));
+            } else {
+                queue.add(pending);
+            }
+        }
+        return pending.future;
+    }
+
+    /**
+     * 发布CA的私钥、证书签发申请、证书以及证书链.
+     *
+     * @param ca           CertificationAuthority
+     * @param keyEncryptor 私钥加密机, 为null时不加密
+     * @return 所有产物落盘并重命名完成后结束的Future
+     * @throws IOException io exception
+     */
+    public CompletableFuture<Void> publish(final CertificationAuthority ca, final PEMEncryptor keyEncryptor)
+            throws IOException {
+        final StringWriter key = new StringWriter();
+        ca.writeKey(key, keyEncryptor);
+        final StringWriter csr = new StringWriter();
+        ca.writeCSR(csr, null);
+        final StringWriter cer = new StringWriter();
+        ca.writeCER(cer, null);
+        final StringWriter chain = new StringWriter();
+        ca.writeChain(chain);
+        return CompletableFuture.allOf(
+                publish(ca.getName(), ArtifactType.KEY, bytes(key)),
+                publish(ca.getName(), ArtifactType.CSR, bytes(csr)),
+                publish(ca.getName(), ArtifactType.CER, bytes(cer)),
+                publish(ca.getName(), ArtifactType.CHAIN, bytes(chain)));
+    }
+
+    private static byte[] bytes(final StringWriter writer) {
+        return writer.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private Path resolve(final String caName, final ArtifactType type) {
+        matchesPattern(caName, "[^/\\\\:]+", "invalid ca name: %s", caName);
+        isTrue(!".".equals(caName) && !"..".equals(caName), "invalid ca name: %s", caName);
+        return caHome.resolve(caName).resolve(type.fileName(caName));
+    }
+
+    private void commitLoop() {
+        final List<Pending> group = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                final Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // 空闲时做检查点, 不占用提交路径
+                    checkpoint();
+                    continue;
+                }
+                group.add(first);
+                final long deadline = System.nanoTime() + lingerNanos;
+                while (group.size() < maxBatchSize) {
+                    if (queue.drainTo(group, maxBatchSize - group.size()) == 0) {
+                        final long remaining = deadline - System.nanoTime();
+                        final Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        group.add(next);
+                    }
+                }
+                commit(group);
+                if (journal.size() >= CHECKPOINT_BYTES) {
+                    checkpoint();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                LOGGER.error("publish journal unavailable", e);
+            } finally {
+                group.clear();
+            }
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("publisher closed"));
+        }
+    }
+
+    private void commit(final List<Pending> group) {
+        // 1. 写入临时文件, 不fsync; 单个产物失败只影响它自己
+        final List<Pending> written = new ArrayList<>(group.size());
+        for (Pending pending : group) {
+            try {
+                pending.write(posix);
+                written.add(pending);
+            } catch (IOException | RuntimeException e) {
+                fail(Collections.singletonList(pending), e);
+            }
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+
+        // 2. 整组追加到日志, 只fsync一次
+        try {
+            final long position = journal.size();
+            final ByteBuffer records = ByteBuffer.wrap(encode(written));
+            long offset = position;
+            while (records.hasRemaining()) {
+                offset += journal.write(records, offset);
+            }
+            journal.force(false);
+        } catch (IOException | RuntimeException e) {
+            fail(written, e);
+            return;
+        }
+
+        // 3. 原子重命名; 重命名失败的产物单独以失败结束, 其日志记录在下次检查点时丢弃
+        int renamed = 0;
+        for (Pending pending : written) {
+            try {
+                Files.move(pending.temp, pending.target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                pending.temp = null;
+                unsynced.add(pending.target);
+                pending.future.complete(null);
+                renamed++;
+            } catch (IOException | RuntimeException e) {
+                fail(Collections.singletonList(pending), e);
+            }
+        }
+        LOGGER.debug("published {} artifacts with one journal sync", renamed);
+    }
+
+    /**
+     * 并行fsync检查点以来重命名过的文件, 每个目录fsync一次, 然后清空日志.
+     * 失败时保留日志, 下次检查点重试.
+     */
+    private void checkpoint() throws InterruptedException {
+        if (unsynced.isEmpty()) {
+            return;
+        }
+        try {
+            final List<Future<?>> syncs = new ArrayList<>(unsynced.size());
+            final Set<Path> directories = new LinkedHashSet<>();
+            for (Path file : unsynced) {
+                directories.add(file.getParent());
+                syncs.add(syncer.submit(() -> {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        channel.force(false);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> sync : syncs) {
+                sync.get();
+            }
+            for (Path directory : directories) {
+                syncDirectory(directory);
+            }
+            journal.truncate(0);
+            journal.force(false);
+            LOGGER.debug("checkpoint: {} files in {} directories", unsynced.size(), directories.size());
+            unsynced.clear();
+        } catch (IOException | ExecutionException | RuntimeException e) {
+            LOGGER.error("checkpoint failed, journal kept", e instanceof ExecutionException ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * 日志记录: 路径长度(int), 相对于$CA_HOME的路径(UTF-8), 是否机密(byte), 内容长度(int), 内容, CRC32(int).
+     */
+    private byte[] encode(final List<Pending> group) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CRC32 crc = new CRC32();
+        for (Pending pending : group) {
+            final byte[] path = caHome.relativize(pending.target).toString().replace('\\', '/')
+                    .getBytes(StandardCharsets.UTF_8);
+            final ByteBuffer record = ByteBuffer.allocate(4 + path.length + 1 + 4 + pending.content.length + 4);
+            record.putInt(path.length).put(path).put((byte) (pending.secret ? 1 : 0))
+                    .putInt(pending.content.length).put(pending.content);
+            crc.reset();
+            crc.update(record.array(), 0, record.position());
+            record.putInt((int) crc.getValue());
+            out.write(record.array(), 0, record.capacity());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 重放日志中校验和完整的记录, 遇到写了一半的尾部即停止, 然后清空日志.
+     */
+    private void replay() throws IOException {
+        final long size = journal.size();
+        if (size == 0) {
+            return;
+        }
+        isTrue(size <= Integer.MAX_VALUE, "journal too large: %d", size);
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (journal.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        final CRC32 crc = new CRC32();
+        final Set<Path> directories = new LinkedHashSet<>();
+        int replayed = 0;
+        while (buffer.remaining() >= 4) {
+            final int start = buffer.position();
+            final int pathLength = buffer.getInt();
+            if (pathLength < 0 || buffer.remaining() < pathLength + 1 + 4) {
+                break;
+            }
+            final byte[] path = new byte[pathLength];
+            buffer.get(path);
+            final boolean secret = buffer.get() != 0;
+            final int contentLength = buffer.getInt();
+            if (contentLength < 0 || buffer.remaining() < contentLength + 4) {
+                break;
+            }
+            final byte[] content = new byte[contentLength];
+            buffer.get(content);
+            crc.reset();
+            crc.update(buffer.array(), start, buffer.position() - start);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            final Pending pending = new Pending(caHome.resolve(new String(path, StandardCharsets.UTF_8)).normalize(),
+                    secret, content);
+            try {
+                isTrue(pending.target.startsWith(caHome.normalize()), "outside of caHome: %s", pending.target);
+                pending.write(posix);
+                pending.sync();
+                Files.move(pending.temp, pending.target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                directories.add(pending.target.getParent());
+                replayed++;
+            } catch (IOException | RuntimeException e) {
+                pending.abort();
+                LOGGER.warn("failed to replay: {}", pending.target, e);
+            }
+        }
+        for (Path directory : directories) {
+            syncDirectory(directory);
+        }
+        journal.truncate(0);
+        journal.force(false);
+        LOGGER.info("replayed {} artifacts from publish journal", replayed);
+    }
+
+    private static void fail(final List<Pending> group, final Throwable cause) {
+        LOGGER.error("publish failed: {} artifacts", group.size(), cause);
+        for (Pending pending : group) {
+            pending.abort();
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
+    private static void syncDirectory(final Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 部分平台(如Windows)不支持打开目录
+            LOGGER.debug("directory sync not supported: {}", directory, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+        }
+        try {
+            committer.join();
+            checkpoint();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while closing publisher", e);
+        } finally {
+            syncer.shutdownNow();
+            journal.close();
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("publisher closed"));
+        }
+    }
+
+    private static final class Pending {
+        private final Path target;
+        private final boolean secret;
+        private final byte[] content;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private Path temp;
+
+        private Pending(final Path target, final boolean secret, final byte[] content) {
+            this.target = target;
+            this.secret = secret;
+            this.content = content;
+        }
+
+        private void write(final boolean posix) throws IOException {
+            Files.createDirectories(target.getParent());
+            temp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, CREATE_NEW, secret && posix ? OWNER_ONLY
+                    : NO_ATTRIBUTES)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+
+        private void sync() throws IOException {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+        }
+
+        private void abort() {
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("failed to clean up: {}", temp, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package io.github.dbstarll.certs.registry;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.certs.model.Subject;
+import io.github.dbstarll.certs.publish.ArtifactType;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.cert.CertException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.openssl.PEMDecryptorProvider;
+import org.bouncycastle.openssl.PEMEncryptedKeyPair;
+import org.bouncycastle.openssl.PEMException;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.bouncycastle.openssl.jcajce.JcePEMDecryptorProviderBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.commons.lang3.Validate.notBlank;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * CA注册表, 按名称、主体和主体密钥标识索引CA层级.
+ *
+ * <p>读操作只访问不可变快照, 无锁且互不竞争; 注册、移除和从磁盘重新加载都在构建出完整的新快照后原子替换,
+ * 正在进行的签发继续使用已取得的CA对象, 不会被暂停. 续期的上级CA注册后, 其下级CA会被重新链接到新的签发者,
+ * 前提是下级CA的证书确实由新的签发者签发(签发者名称、授权密钥标识与签名都匹配); 更换了密钥的上级CA不会被链接,
+ * 下级CA保留原来的签发者, 直到以新密钥重新签发.</p>
+ *
+ * <p>从磁盘重新加载时同样只链接确实签发了下级CA证书的签发者. 私钥与证书的公钥不匹配的CA(如发布过程中
+ * 私钥和证书只替换了其中一个)不会被加载, 保留注册表中原有的同名CA.</p>
+ */
+public final class CertificationAuthorityRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CertificationAuthorityRegistry.class);
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * 按名称查找CA.
+     *
+     * @param name name of ca
+     * @return CA, 不存在时返回null
+     */
+    public CertificationAuthority get(final String name) {
+        return snapshot.byName.get(name);
+    }
+
+    /**
+     * 按主体查找CA.
+     *
+     * @param subject 主体
+     * @return CA, 不存在时返回null
+     */
+    public CertificationAuthority getBySubject(final X500Name subject) {
+        return snapshot.bySubject.get(subject);
+    }
+
+    /**
+     * 按主体密钥标识查找CA, 可用于按授权密钥标识(Authority Key Identifier)定位签发者.
+     *
+     * @param keyIdentifier 主体密钥标识
+     * @return CA, 不存在时返回null
+     */
+    public CertificationAuthority getByKeyIdentifier(final byte[] keyIdentifier) {
+        return snapshot.byKeyId.get(ByteBuffer.wrap(keyIdentifier));
+    }
+
+    /**
+     * 获得所有已注册的CA.
+     *
+     * @return 所有已注册的CA
+     */
+    public Collection<CertificationAuthority> getAll() {
+        return snapshot.byName.values();
+    }
+
+    /**
+     * 获得注册表的版本号, 每次替换快照后递增, 可用于判断CA层级是否发生变化.
+     *
+     * @return 版本号
+     */
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * 注册CA, 同名的CA被替换, 以其为签发者的下级CA随之重新链接.
+     *
+     * @param cas 待注册的CA
+     */
+    public synchronized void register(final Collection<CertificationAuthority> cas) {
+        final Map<String, CertificationAuthority> byName = new HashMap<>(snapshot.byName);
+        for (CertificationAuthority ca : notNull(cas, "cas is null")) {
+            byName.put(notBlank(ca.getName(), "name of ca is blank"), ca);
+        }
+        swap(relink(byName));
+    }
+
+    /**
+     * 移除CA.
+     *
+     * @param names 待移除的CA名称
+     */
+    public synchronized void unregister(final Collection<String> names) {
+        final Map<String, CertificationAuthority> byName = new HashMap<>(snapshot.byName);
+        for (String name : notNull(names, "names is null")) {
+            byName.remove(name);
+        }
+        swap(relink(byName));
+    }
+
+    /**
+     * 从$CA_HOME目录重新加载所有CA并整体替换, 加载失败时保留原有的CA.
+     *
+     * @param caHome CA根目录
+     * @param phrase private key pass phrase, 私钥未加密时为null
+     * @throws IOException io exception
+     */
+    public void reload(final Path caHome, final char[] phrase) throws IOException {
+        final PEMDecryptorProvider decryptor = phrase == null ? null
+                : new JcePEMDecryptorProviderBuilder().build(phrase);
+        final Map<String, Loaded> loaded = new HashMap<>();
+        final Map<String, CertificationAuthority> byName = new HashMap<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(notNull(caHome, "caHome is null"),
+                Files::isDirectory)) {
+            for (Path dir : dirs) {
+                final String name = dir.getFileName().toString();
+                if (Files.isRegularFile(dir.resolve(ArtifactType.CER.fileName(name)))
+                        && Files.isRegularFile(dir.resolve(ArtifactType.KEY.fileName(name)))) {
+                    final Loaded ca = load(dir, name, decryptor);
+                    final CertificationAuthority previous = snapshot.byName.get(name);
+                    if (matches(ca.keyPair, ca.crt)) {
+                        loaded.put(name, ca);
+                    } else if (previous != null && previous.getCrt() != null) {
+                        LOGGER.warn("private key of {} does not match its certificate, keep the previous one", name);
+                        byName.put(name, previous);
+                        loaded.put(name, new Loaded(name, null, null, previous.getCrt()));
+                    } else {
+                        LOGGER.warn("private key of {} does not match its certificate, skipped", name);
+                    }
+                }
+            }
+        }
+
+        final Map<X500Name, Loaded> subjects = new HashMap<>();
+        for (Loaded ca : loaded.values()) {
+            subjects.put(ca.crt.getSubject(), ca);
+        }
+        final Set<String> visiting = new HashSet<>();
+        for (Loaded ca : loaded.values()) {
+            link(ca, subjects, byName, visiting);
+        }
+        synchronized (this) {
+            // 保留的原有CA重新链接到本次加载的签发者
+            swap(relink(byName));
+        }
+        LOGGER.info("reloaded {} certification authorities from {}", byName.size(), caHome);
+    }
+
+    private static CertificationAuthority link(final Loaded ca, final Map<X500Name, Loaded> subjects,
+                                               final Map<String, CertificationAuthority> byName,
+                                               final Set<String> visiting) {
+        CertificationAuthority linked = byName.get(ca.name);
+        if (linked == null) {
+            final X500Name issuerName = ca.crt.getIssuer();
+            CertificationAuthority issuer = null;
+            if (!issuerName.equals(ca.crt.getSubject())) {
+                final Loaded parent = subjects.get(issuerName);
+                if (parent == null) {
+                    LOGGER.warn("issuer of {} not found: {}", ca.name, issuerName);
+                } else if (!visiting.add(ca.name)) {
+                    LOGGER.warn("issuer cycle detected at {}: {}", ca.name, issuerName);
+                    return null;
+                } else {
+                    try {
+                        issuer = link(parent, subjects, byName, visiting);
+                    } finally {
+                        visiting.remove(ca.name);
+                    }
+                    if (issuer != null && !issuedBy(ca.name, ca.crt, issuer)) {
+                        LOGGER.warn("{} is not signed by {}, left unlinked", ca.name, issuer.getName());
+                        issuer = null;
+                    }
+                }
+            }
+            linked = new CertificationAuthority(ca.name, ca.keyPair, Subject.from(ca.crt.getSubject()), ca.csr,
+                    ca.crt, issuer);
+            byName.put(ca.name, linked);
+        }
+        return linked;
+    }
+
+    private static Loaded load(final Path dir, final String name, final PEMDecryptorProvider decryptor)
+            throws IOException {
+        final Certificate crt;
+        try (Reader reader = Files.newBufferedReader(dir.resolve(ArtifactType.CER.fileName(name)),
+                StandardCharsets.US_ASCII)) {
+            crt = Certificate.readPEM(reader);
+        }
+        final KeyPair keyPair;
+        try (Reader reader = Files.newBufferedReader(dir.resolve(ArtifactType.KEY.fileName(name)),
+                StandardCharsets.US_ASCII)) {
+            keyPair = readKeyPair(reader, crt, decryptor);
+        }
+        final Path csrFile = dir.resolve(ArtifactType.CSR.fileName(name));
+        CertificateSigningRequest csr = null;
+        if (Files.isRegularFile(csrFile)) {
+            try (Reader reader = Files.newBufferedReader(csrFile, StandardCharsets.US_ASCII)) {
+                csr = CertificateSigningRequest.readPEM(reader);
+            }
+        }
+        return new Loaded(name, keyPair, csr, crt);
+    }
+
+    /**
+     * 以私钥签名、证书公钥验证的方式判断私钥与证书是否匹配.
+     */
+    private static boolean matches(final KeyPair keyPair, final Certificate crt) {
+        try {
+            final PublicKey publicKey = new JcaPEMKeyConverter().getPublicKey(
+                    new X509CertificateHolder(crt.getEncoded()).getSubjectPublicKeyInfo());
+            final String algorithm = signatureAlgorithm(publicKey.getAlgorithm());
+            final byte[] challenge = crt.getEncoded();
+            final Signature signer = Signature.getInstance(algorithm);
+            signer.initSign(keyPair.getPrivate());
+            signer.update(challenge);
+            final Signature verifier = Signature.getInstance(algorithm);
+            verifier.initVerify(publicKey);
+            verifier.update(challenge);
+            return verifier.verify(signer.sign());
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.warn("failed to check private key against {}", crt.getSubject(), e);
+            return false;
+        }
+    }
+
+    private static String signatureAlgorithm(final String keyAlgorithm) {
+        switch (keyAlgorithm) {
+            case "EC":
+            case "ECDSA":
+                return "SHA256withECDSA";
+            case "RSA":
+            case "DSA":
+                return "SHA256with" + keyAlgorithm;
+            default:
+                // Ed25519、Ed448等算法自带摘要
+                return keyAlgorithm;
+        }
+    }
+
+    private static KeyPair readKeyPair(final Reader reader, final Certificate crt,
+                                       final PEMDecryptorProvider decryptor) throws IOException {
+        final JcaPEMKeyConverter converter = new JcaPEMKeyConverter();
+        try (PEMParser parser = new PEMParser(reader)) {
+            Object obj = parser.readObject();
+            if (obj instanceof PEMEncryptedKeyPair) {
+                if (decryptor == null) {
+                    throw new PEMException("private key is encrypted, but no pass phrase supplied");
+                }
+                obj = ((PEMEncryptedKeyPair) obj).decryptKeyPair(decryptor);
+            }
+            if (obj instanceof PEMKeyPair) {
+                return converter.getKeyPair((PEMKeyPair) obj);
+            } else if (obj instanceof PrivateKeyInfo) {
+                return new KeyPair(converter.getPublicKey(
+                        new X509CertificateHolder(crt.getEncoded()).getSubjectPublicKeyInfo()),
+                        converter.getPrivateKey((PrivateKeyInfo) obj));
+            } else {
+                throw new PEMException("not a private key");
+            }
+        }
+    }
+
+    /**
+     * 将下级CA重新链接到同名的当前签发者对象上, 只有下级CA的证书确实由其签发时才链接, 否则保留原来的签发者.
+     */
+    private static Map<String, CertificationAuthority> relink(final Map<String, CertificationAuthority> byName) {
+        final Map<String, CertificationAuthority> linked = new HashMap<>(byName.size());
+        final Set<String> visiting = new HashSet<>();
+        for (CertificationAuthority ca : byName.values()) {
+            relink(ca, byName, linked, visiting);
+        }
+        return linked;
+    }
+
+    private static CertificationAuthority relink(final CertificationAuthority ca,
+                                                 final Map<String, CertificationAuthority> byName,
+                                                 final Map<String, CertificationAuthority> linked,
+                                                 final Set<String> visiting) {
+        final CertificationAuthority done = linked.get(ca.getName());
+        if (done != null) {
+            return done;
+        } else if (!visiting.add(ca.getName())) {
+            LOGGER.warn("issuer cycle detected at {}", ca.getName());
+            return ca;
+        }
+        final CertificationAuthority issuer = ca.getIssuer();
+        CertificationAuthority result = ca;
+        try {
+            if (issuer != null) {
+                final CertificationAuthority current = byName.get(issuer.getName());
+                if (current != null && current != ca) {
+                    final CertificationAuthority newIssuer = relink(current, byName, linked, visiting);
+                    if (newIssuer != issuer) {
+                        if (issuedBy(ca.getName(), ca.getCrt(), newIssuer)) {
+                            result = ca.withIssuer(newIssuer);
+                        } else {
+                            LOGGER.warn("{} is not signed by the current {}, keep the previous issuer",
+                                    ca.getName(), newIssuer.getName());
+                        }
+                    }
+                }
+            }
+        } finally {
+            visiting.remove(ca.getName());
+        }
+        linked.put(ca.getName(), result);
+        return result;
+    }
+
+    /**
+     * 判断CA的证书是否由指定的签发者签发: 签发者名称、授权密钥标识(如有)与签名都须匹配.
+     */
+    private static boolean issuedBy(final String name, final Certificate crt, final CertificationAuthority issuer) {
+        final Certificate issuerCrt = issuer.getCrt();
+        if (crt == null || issuerCrt == null || !crt.getIssuer().equals(issuerCrt.getSubject())) {
+            return false;
+        }
+        try {
+            final X509CertificateHolder holder = new X509CertificateHolder(crt.getEncoded());
+            final AuthorityKeyIdentifier aki = AuthorityKeyIdentifier.fromExtensions(holder.getExtensions());
+            if (aki != null && aki.getKeyIdentifier() != null
+                    && !Arrays.equals(aki.getKeyIdentifier(), issuerCrt.getSubjectKeyIdentifier())) {
+                return false;
+            }
+            return holder.isSignatureValid(new JcaContentVerifierProviderBuilder()
+                    .build(new X509CertificateHolder(issuerCrt.getEncoded())));
+        } catch (IOException | OperatorCreationException | CertException | CertificateException e) {
+            LOGGER.warn("failed to verify {} against {}", name, issuer.getName(), e);
+            return false;
+        }
+    }
+
+    private void swap(final Map<String, CertificationAuthority> byName) {
+        final Map<X500Name, CertificationAuthority> bySubject = new HashMap<>(byName.size());
+        final Map<ByteBuffer, CertificationAuthority> byKeyId = new HashMap<>(byName.size());
+        for (CertificationAuthority ca : byName.values()) {
+            final Certificate crt = ca.getCrt();
+            if (crt != null) {
+                bySubject.put(crt.getSubject(), ca);
+                byKeyId.put(ByteBuffer.wrap(crt.getSubjectKeyIdentifier()), ca);
+            }
+        }
+        snapshot = new Snapshot(snapshot.version + 1, byName, bySubject, byKeyId);
+    }
+
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(0, Collections.emptyMap(), Collections.emptyMap(),
+                Collections.emptyMap());
+
+        private final long version;
+        private final Map<String, CertificationAuthority> byName;
+        private final Map<X500Name, CertificationAuthority> bySubject;
+        private final Map<ByteBuffer, CertificationAuthority> byKeyId;
+
+        private Snapshot(final long version, final Map<String, CertificationAuthority> byName,
+                         final Map<X500Name, CertificationAuthority> bySubject,
+                         final Map<ByteBuffer, CertificationAuthority> byKeyId) {
+            this.version = version;
+            this.byName = Collections.unmodifiableMap(byName);
+            this.bySubject = bySubject;
+            this.byKeyId = byKeyId;
+        }
+    }
+
+    private static final class Loaded {
+        private final String name;
+        private final KeyPair keyPair;
+        private final CertificateSigningRequest csr;
+        private final Certificate crt;
+
+        private Loaded(final String name, final KeyPair keyPair, final CertificateSigningRequest csr,
+                       final Certificate crt) {
+            this.name = name;
+            this.keyPair = keyPair;
+            this.csr = csr;
+            this.crt = crt;
+        }
+    }
+}
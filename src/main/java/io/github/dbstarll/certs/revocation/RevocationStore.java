@@ -0,0 +1,378 @@
+package io.github.dbstarll.certs.revocation;
+
+import io.github.dbstarll.certs.model.Certificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+import static org.apache.commons.lang3.Validate.validState;
+
+/**
+ * 单个CA的已吊销证书序列号集合.
+ *
+ * <p>已合并的序列号有序存放在堆外(direct或mmap)的long数组中, 用二分查找; 最近吊销的序列号先进入堆上的
+ * 开放寻址哈希表, 达到阈值或调用{@link #merge()}时归并进有序数组. 归并阈值随有序数组的大小按比例增长,
+ * 使每次吊销分摊的归并开销保持为常数.</p>
+ *
+ * <p>哈希表只在写锁内追加, 槽位以原子方式写入, 扩容时复制到新表; 有序数组与哈希表一起封装在状态对象中,
+ * 只在扩容或归并时替换. 查询只读取一次volatile引用, 不加锁也不分配内存.</p>
+ *
+ * <p>持久化格式: 魔数(4字节) + 版本(4字节) + 条数(8字节) + 有序的序列号(每个8字节, 大端),
+ * 重新加载时直接mmap文件, 无需解析.</p>
+ *
+ * <p>{@link Certificate#generate}签发的序列号为64位, 因此只支持可以用long表示的序列号.</p>
+ */
+public final class RevocationStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RevocationStore.class);
+
+    private static final int MAGIC = 0x43524c53; // "CRLS"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 16;
+    private static final int DEFAULT_MERGE_THRESHOLD = 4096;
+    // 最近吊销的序列号超过有序数组的1/16时归并
+    private static final int MERGE_RATIO_SHIFT = 4;
+    private static final int MAX_ENTRIES = Integer.MAX_VALUE / Long.BYTES;
+
+    private final Path file;
+    private final int mergeThreshold;
+    private volatile State state;
+
+    private RevocationStore(final Path file, final int mergeThreshold, final LongBuffer base) {
+        this.file = file;
+        this.mergeThreshold = mergeThreshold;
+        this.state = new State(base, new Overlay());
+    }
+
+    /**
+     * 打开(或新建)一个吊销集合.
+     *
+     * @param file 持久化文件
+     * @return RevocationStore
+     * @throws IOException io exception
+     */
+    public static RevocationStore open(final Path file) throws IOException {
+        return open(file, DEFAULT_MERGE_THRESHOLD);
+    }
+
+    /**
+     * 打开(或新建)一个吊销集合.
+     *
+     * @param file           持久化文件
+     * @param mergeThreshold 最近吊销的序列号达到此数量(且超过已归并数量的1/16)时自动归并
+     * @return RevocationStore
+     * @throws IOException io exception
+     */
+    public static RevocationStore open(final Path file, final int mergeThreshold) throws IOException {
+        isTrue(mergeThreshold > 0, "mergeThreshold must be positive: %d", mergeThreshold);
+        return new RevocationStore(notNull(file, "file is null"), mergeThreshold, load(file));
+    }
+
+    /**
+     * 证书是否已吊销.
+     *
+     * @param certificate 证书
+     * @return 是否已吊销
+     */
+    public boolean isRevoked(final Certificate certificate) {
+        return isRevoked(certificate.getSerialNumber());
+    }
+
+    /**
+     * 序列号是否已吊销.
+     *
+     * @param serial 证书序列号
+     * @return 是否已吊销
+     */
+    public boolean isRevoked(final BigInteger serial) {
+        return serial.bitLength() < Long.SIZE && isRevoked(serial.longValue());
+    }
+
+    /**
+     * 序列号是否已吊销.
+     *
+     * @param serial 证书序列号
+     * @return 是否已吊销
+     */
+    public boolean isRevoked(final long serial) {
+        final State current = state;
+        return current.overlay.contains(serial) || binarySearch(current.base, serial);
+    }
+
+    /**
+     * 已吊销的序列号数.
+     *
+     * @return 已吊销的序列号数
+     */
+    public long size() {
+        final State current = state;
+        return current.base.capacity() + current.overlay.size();
+    }
+
+    /**
+     * 吊销证书.
+     *
+     * @param certificate 证书
+     */
+    public void revoke(final Certificate certificate) {
+        revoke(certificate.getSerialNumber());
+    }
+
+    /**
+     * 吊销序列号.
+     *
+     * @param serial 证书序列号
+     */
+    public void revoke(final BigInteger serial) {
+        isTrue(serial.bitLength() < Long.SIZE, "serial too large: %s", serial);
+        revoke(serial.longValue());
+    }
+
+    /**
+     * 吊销序列号.
+     *
+     * @param serial 证书序列号
+     */
+    public synchronized void revoke(final long serial) {
+        final State current = state;
+        if (!binarySearch(current.base, serial) && !current.overlay.contains(serial)) {
+            final int total = current.base.capacity() + current.overlay.size();
+            validState(total < MAX_ENTRIES, "too many revocations: %d", total);
+            final Overlay overlay = current.overlay.add(serial);
+            if (overlay != current.overlay) {
+                state = new State(current.base, overlay);
+            }
+            if (overlay.size() >= Math.max(mergeThreshold, current.base.capacity() >>> MERGE_RATIO_SHIFT)) {
+                merge();
+            }
+        }
+    }
+
+    /**
+     * 将最近吊销的序列号归并进堆外有序数组.
+     */
+    public synchronized void merge() {
+        final State current = state;
+        if (current.overlay.size() > 0) {
+            final long[] recent = current.overlay.toSortedArray();
+            final LongBuffer base = current.base;
+            final long total = (long) base.capacity() + recent.length;
+            validState(total <= MAX_ENTRIES, "too many revocations: %d", total);
+            final LongBuffer merged = ByteBuffer.allocateDirect((int) total * Long.BYTES)
+                    .order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+            int i = 0;
+            int j = 0;
+            while (i < base.capacity() || j < recent.length) {
+                if (j == recent.length || i < base.capacity() && base.get(i) < recent[j]) {
+                    merged.put(base.get(i++));
+                } else {
+                    merged.put(recent[j++]);
+                }
+            }
+            merged.flip();
+            state = new State(merged, new Overlay());
+            LOGGER.debug("merged {} recent revocations, total {}", recent.length, merged.capacity());
+        }
+    }
+
+    /**
+     * 归并后持久化到文件(临时文件 + 原子重命名).
+     *
+     * @throws IOException io exception
+     */
+    public synchronized void save() throws IOException {
+        merge();
+        final LongBuffer base = state.base;
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                    .putInt(MAGIC).putInt(VERSION).putLong(base.capacity());
+            header.flip();
+            write(channel, header);
+            final ByteBuffer body = ByteBuffer.allocateDirect(64 * 1024);
+            for (int i = 0; i < base.capacity(); i++) {
+                if (body.remaining() < Long.BYTES) {
+                    body.flip();
+                    write(channel, body);
+                    body.clear();
+                }
+                body.putLong(base.get(i));
+            }
+            body.flip();
+            write(channel, body);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(file.toAbsolutePath().getParent());
+    }
+
+    private static void syncDirectory(final Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 部分平台(如Windows)不支持打开目录
+            LOGGER.debug("directory sync not supported: {}", directory, e);
+        }
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static LongBuffer load(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            isTrue(mapped.remaining() >= HEADER_LENGTH && mapped.getInt() == MAGIC, "not a revocation file: %s", file);
+            isTrue(mapped.getInt() == VERSION, "unsupported revocation file version: %s", file);
+            final long count = mapped.getLong();
+            isTrue(count == (long) mapped.remaining() / Long.BYTES, "corrupted revocation file: %s", file);
+            return mapped.slice().order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+        } catch (NoSuchFileException e) {
+            return LongBuffer.allocate(0);
+        }
+    }
+
+    private static boolean binarySearch(final LongBuffer base, final long serial) {
+        int low = 0;
+        int high = base.capacity() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final long value = base.get(mid);
+            if (value < serial) {
+                low = mid + 1;
+            } else if (value > serial) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class State {
+        private final LongBuffer base;
+        private final Overlay overlay;
+
+        private State(final LongBuffer base, final Overlay overlay) {
+            this.base = base;
+            this.overlay = overlay;
+        }
+    }
+
+    /**
+     * 只追加的开放寻址long哈希集合, 0作为空槽标记, 序列号0单独记录.
+     *
+     * <p>只由持有写锁的线程修改, 槽位以原子方式写入, 查询线程不会读到写了一半的序列号;
+     * 装载因子超过1/2时复制到两倍大小的新集合, 旧集合不再修改.</p>
+     */
+    private static final class Overlay {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final AtomicLongArray table;
+        private volatile boolean containsZero;
+        private volatile int size;
+
+        private Overlay() {
+            this(new AtomicLongArray(INITIAL_CAPACITY), false, 0);
+        }
+
+        private Overlay(final AtomicLongArray table, final boolean containsZero, final int size) {
+            this.table = table;
+            this.containsZero = containsZero;
+            this.size = size;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean contains(final long serial) {
+            if (serial == 0) {
+                return containsZero;
+            }
+            final int mask = table.length() - 1;
+            for (int index = mix(serial) & mask; ; index = (index + 1) & mask) {
+                final long value = table.get(index);
+                if (value == serial) {
+                    return true;
+                } else if (value == 0) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * 加入一个不在集合中的序列号, 需要扩容时返回新的集合, 否则原地修改并返回自身.
+         */
+        private Overlay add(final long serial) {
+            if (serial == 0) {
+                containsZero = true;
+                size = size + 1;
+                return this;
+            } else if ((size + 1) * 2L <= table.length()) {
+                insert(table, serial);
+                size = size + 1;
+                return this;
+            }
+            final AtomicLongArray next = new AtomicLongArray(table.length() * 2);
+            for (int i = 0; i < table.length(); i++) {
+                final long value = table.get(i);
+                if (value != 0) {
+                    insert(next, value);
+                }
+            }
+            insert(next, serial);
+            return new Overlay(next, containsZero, size + 1);
+        }
+
+        private static void insert(final AtomicLongArray table, final long serial) {
+            final int mask = table.length() - 1;
+            int index = mix(serial) & mask;
+            while (table.get(index) != 0) {
+                index = (index + 1) & mask;
+            }
+            table.set(index, serial);
+        }
+
+        private long[] toSortedArray() {
+            final long[] values = new long[size];
+            int count = 0;
+            if (containsZero) {
+                values[count++] = 0;
+            }
+            for (int i = 0; i < table.length(); i++) {
+                final long value = table.get(i);
+                if (value != 0) {
+                    values[count++] = value;
+                }
+            }
+            Arrays.sort(values);
+            return values;
+        }
+
+        private static int mix(final long serial) {
+            long h = serial;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return (int) h;
+        }
+    }
+}
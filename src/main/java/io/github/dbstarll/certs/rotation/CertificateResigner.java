@@ -0,0 +1,305 @@
+package io.github.dbstarll.certs.rotation;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.util.encoders.Hex;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * CA密钥轮换时的增量重签: 将已签发的证书逐批交由新的签发者重新签名.
+ *
+ * <p>输入和输出都是PEM证书流文件, 按顺序流式读写, 每批证书并行签名后按输入顺序追加到输出文件.
+ * 每批写入并fsync后, 以原子重命名的方式更新检查点(已处理的输入证书数、输入文件偏移和输出文件长度),
+ * 并fsync所在目录; 中断后再次执行时从检查点记录的输入偏移处继续读取, 并截掉输出文件中检查点之后未完成的部分.
+ * 完成后保留检查点, 输入追加了新证书时再次执行只处理新增的部分.</p>
+ *
+ * <p>检查点以新签发者证书的主体密钥标识区分所属的轮换, 新旧签发者名称相同也不会误用对方的检查点.</p>
+ */
+public final class CertificateResigner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CertificateResigner.class);
+
+    private static final String PROCESSED = "processed";
+    private static final String INPUT_OFFSET = "inputOffset";
+    private static final String OUTPUT_LENGTH = "outputLength";
+    private static final String ISSUER = "issuer";
+    private static final String ISSUER_KEY_ID = "issuerKeyId";
+
+    private static final String PEM_BEGIN = "-----BEGIN ";
+    private static final String PEM_END = "-----END ";
+
+    private final CertificationAuthority issuer;
+    private final SignatureAlgorithm signatureAlgorithm;
+    private final int batchSize;
+    private final int parallelism;
+    private final String issuerKeyId;
+
+    /**
+     * 构建重签器.
+     *
+     * @param issuer             新的签发者
+     * @param signatureAlgorithm 签名算法
+     * @param batchSize          每批证书数, 也是检查点的间隔
+     * @param parallelism        并行签名的线程数
+     */
+    public CertificateResigner(final CertificationAuthority issuer, final SignatureAlgorithm signatureAlgorithm,
+                               final int batchSize, final int parallelism) {
+        isTrue(batchSize > 0, "batchSize must be positive: %d", batchSize);
+        isTrue(parallelism > 0, "parallelism must be positive: %d", parallelism);
+        this.issuer = notNull(issuer, "issuer is null");
+        this.signatureAlgorithm = notNull(signatureAlgorithm, "signatureAlgorithm is null");
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.issuerKeyId = Hex.toHexString(issuer.getCrt().getSubjectKeyIdentifier());
+    }
+
+    /**
+     * 重签输入文件中的证书, 并追加到输出文件.
+     *
+     * @param input      PEM证书流输入文件
+     * @param output     PEM证书流输出文件
+     * @param checkpoint 检查点文件
+     * @return 本次重签的证书数
+     * @throws IOException               io exception
+     * @throws OperatorCreationException OperatorCreationException
+     * @throws InterruptedException      中断时抛出, 已完成的批次记录在检查点中
+     */
+    public long rotate(final Path input, final Path output, final Path checkpoint)
+            throws IOException, OperatorCreationException, InterruptedException {
+        final Properties state = readCheckpoint(checkpoint);
+        long processed = Long.parseLong(state.getProperty(PROCESSED, "0"));
+        final long inputOffset = Long.parseLong(state.getProperty(INPUT_OFFSET, "0"));
+        long outputLength = Long.parseLong(state.getProperty(OUTPUT_LENGTH, "0"));
+
+        final AtomicInteger threads = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            final Thread thread = new Thread(r, "resigner-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long resigned = 0;
+        try (PemInput pemInput = new PemInput(input, inputOffset);
+             FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            isTrue(channel.size() >= outputLength, "output is shorter than checkpoint: %d < %d",
+                    channel.size(), outputLength);
+            channel.truncate(outputLength);
+            channel.position(outputLength);
+
+            final Date notBefore = new Date();
+            List<byte[]> batch = readBatch(pemInput);
+            while (!batch.isEmpty()) {
+                final List<Future<Certificate>> futures = new ArrayList<>(batch.size());
+                for (byte[] encoded : batch) {
+                    futures.add(executor.submit(() -> Certificate.decode(encoded)
+                            .resign(issuer, signatureAlgorithm, notBefore)));
+                }
+                final StringWriter pem = new StringWriter();
+                for (Future<Certificate> future : futures) {
+                    await(future).writePEM(pem, null);
+                }
+                final ByteBuffer bytes = ByteBuffer.wrap(pem.toString().getBytes(StandardCharsets.US_ASCII));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+
+                processed += batch.size();
+                resigned += batch.size();
+                outputLength = channel.position();
+                writeCheckpoint(checkpoint, processed, pemInput.offset, outputLength);
+                LOGGER.debug("resigned {} certificates by {}, checkpoint at {}", resigned, issuer.getName(),
+                        processed);
+                batch = readBatch(pemInput);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("resigned {} certificates by {}, {} in total", resigned, issuer.getName(), processed);
+        return resigned;
+    }
+
+    private List<byte[]> readBatch(final PemInput input) throws IOException {
+        final List<byte[]> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize) {
+            final byte[] content = input.next();
+            if (content == null) {
+                break;
+            }
+            batch.add(content);
+        }
+        return batch;
+    }
+
+    private static Certificate await(final Future<Certificate> future)
+            throws IOException, OperatorCreationException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof OperatorCreationException) {
+                throw (OperatorCreationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private Properties readCheckpoint(final Path checkpoint) throws IOException {
+        final Properties state = new Properties();
+        if (Files.exists(checkpoint)) {
+            try (InputStream in = Files.newInputStream(checkpoint)) {
+                state.load(in);
+            }
+            final String owner = state.getProperty(ISSUER);
+            if (!issuerKeyId.equals(state.getProperty(ISSUER_KEY_ID))) {
+                throw new IllegalStateException("checkpoint belongs to rotation by " + owner + " with key id "
+                        + state.getProperty(ISSUER_KEY_ID) + ": " + checkpoint);
+            }
+            LOGGER.info("resume rotation by {} from {} certificates", owner, state.getProperty(PROCESSED));
+        }
+        return state;
+    }
+
+    private void writeCheckpoint(final Path checkpoint, final long processed, final long inputOffset,
+                                 final long outputLength) throws IOException {
+        final Properties state = new Properties();
+        state.setProperty(ISSUER, issuer.getName());
+        state.setProperty(ISSUER_KEY_ID, issuerKeyId);
+        state.setProperty(PROCESSED, Long.toString(processed));
+        state.setProperty(INPUT_OFFSET, Long.toString(inputOffset));
+        state.setProperty(OUTPUT_LENGTH, Long.toString(outputLength));
+        final Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        state.store(buffer, null);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(checkpoint.toAbsolutePath().getParent());
+    }
+
+    private static void syncDirectory(final Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 部分平台(如Windows)不支持打开目录
+            LOGGER.debug("directory sync not supported: {}", directory, e);
+        }
+    }
+
+    /**
+     * 按行读取PEM证书流, 并记录已读完的PEM对象之后的输入偏移, 以便从检查点处直接定位.
+     */
+    private static final class PemInput implements Closeable {
+        private final InputStream in;
+        private final StringBuilder line = new StringBuilder();
+        private long offset;
+
+        private PemInput(final Path input, final long offset) throws IOException {
+            final FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+            try {
+                if (channel.size() < offset) {
+                    throw new IOException("input is shorter than checkpoint: " + channel.size() + " < " + offset);
+                }
+                channel.position(offset);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            this.in = new BufferedInputStream(Channels.newInputStream(channel));
+            this.offset = offset;
+        }
+
+        /**
+         * 读取下一个PEM对象.
+         *
+         * @return PEM对象的内容, 输入结束时返回null
+         * @throws IOException io exception
+         */
+        private byte[] next() throws IOException {
+            StringBuilder block = null;
+            while (readLine()) {
+                final String text = line.toString().trim();
+                if (block == null) {
+                    if (!text.startsWith(PEM_BEGIN)) {
+                        continue;
+                    }
+                    block = new StringBuilder();
+                }
+                block.append(text).append('\n');
+                if (text.startsWith(PEM_END)) {
+                    try (PemReader reader = new PemReader(new StringReader(block.toString()))) {
+                        final PemObject pem = reader.readPemObject();
+                        if (pem == null) {
+                            throw new IOException("malformed PEM object before offset " + offset);
+                        }
+                        return pem.getContent();
+                    }
+                }
+            }
+            if (block != null) {
+                throw new IOException("truncated PEM object at end of input");
+            }
+            return null;
+        }
+
+        private boolean readLine() throws IOException {
+            line.setLength(0);
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                offset++;
+                if (b == '\n') {
+                    return true;
+                }
+                line.append((char) b);
+            }
+            return line.length() > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package io.github.dbstarll.certs.sni;
+
+import io.github.dbstarll.certs.model.Certificate;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1String;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.util.IPAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 根据SNI(Server Name Indication)主机名或IP地址选择证书.
+ *
+ * <p>DNS类型的SAN按标签逆序(com -&gt; example -&gt; www)索引在前缀树中, 通配符SAN(*.example.com)
+ * 挂在其父节点上且只匹配一个标签; IP类型的SAN按地址字节索引. 每个名字下的证书按notBefore从新到旧排列,
+ * 选择时返回第一个处于有效期内的证书, 精确匹配优先于通配符匹配.</p>
+ *
+ * <p>读操作只访问不可变快照, 无锁; 更新时只复制前缀树中受影响的节点, 一次批量更新中每个节点最多复制一次,
+ * 再原子替换快照.</p>
+ */
+public final class SniCertificateSelector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SniCertificateSelector.class);
+
+    private static final String WILDCARD = "*";
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private volatile Snapshot snapshot = new Snapshot(Node.EMPTY, Collections.emptyMap());
+
+    /**
+     * 按主机名(或IP地址字面量)选择证书.
+     *
+     * @param serverName 主机名或IP地址字面量
+     * @return 最新的有效证书, 没有匹配时返回null
+     */
+    public Certificate select(final String serverName) {
+        return select(serverName, System.currentTimeMillis());
+    }
+
+    /**
+     * 按主机名(或IP地址字面量)选择指定时刻有效的证书.
+     *
+     * @param serverName 主机名或IP地址字面量
+     * @param now        时刻(毫秒)
+     * @return 最新的有效证书, 没有匹配时返回null
+     */
+    public Certificate select(final String serverName, final long now) {
+        final Snapshot current = snapshot;
+        if (serverName.indexOf(':') >= 0 || IPAddress.isValidIPv4(serverName)) {
+            return IPAddress.isValid(serverName) ? select(current, address(serverName), now) : null;
+        }
+
+        final String host = normalize(serverName);
+        Node node = current.root;
+        Entry[] wildcard = NO_ENTRIES;
+        int end = host.length();
+        while (end > 0) {
+            final int dot = host.lastIndexOf('.', end - 1);
+            if (dot < 0) {
+                wildcard = node.wildcard;
+            }
+            node = node.children.get(host.substring(dot + 1, end));
+            if (node == null) {
+                return choose(wildcard, now);
+            }
+            end = dot;
+        }
+        final Certificate exact = end < 0 ? choose(node.exact, now) : null;
+        return exact != null ? exact : choose(wildcard, now);
+    }
+
+    /**
+     * 按IP地址选择证书.
+     *
+     * @param address IP地址
+     * @return 最新的有效证书, 没有匹配时返回null
+     */
+    public Certificate select(final InetAddress address) {
+        return select(snapshot, address.getAddress(), System.currentTimeMillis());
+    }
+
+    private static Certificate select(final Snapshot current, final byte[] address, final long now) {
+        final Entry[] entries = current.addresses.get(ByteBuffer.wrap(address));
+        return entries == null ? null : choose(entries, now);
+    }
+
+    private static Certificate choose(final Entry[] entries, final long now) {
+        for (Entry entry : entries) {
+            if (entry.notBefore <= now && now <= entry.notAfter) {
+                return entry.certificate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 添加证书.
+     *
+     * @param certificates 证书
+     */
+    public void add(final Collection<Certificate> certificates) {
+        update(certificates, Collections.emptyList());
+    }
+
+    /**
+     * 移除证书.
+     *
+     * @param certificates 证书
+     */
+    public void remove(final Collection<Certificate> certificates) {
+        update(Collections.emptyList(), certificates);
+    }
+
+    /**
+     * 一次性添加和移除证书, 读者只会看到更新前或更新后的完整快照.
+     *
+     * @param added   待添加的证书
+     * @param removed 待移除的证书
+     */
+    public synchronized void update(final Collection<Certificate> added, final Collection<Certificate> removed) {
+        final Snapshot current = snapshot;
+        final Draft root = new Draft(current.root);
+        final Map<ByteBuffer, Entry[]> addresses = new HashMap<>(current.addresses);
+        for (Certificate certificate : notNull(removed, "removed is null")) {
+            final Entry entry = new Entry(certificate);
+            for (GeneralName name : names(certificate)) {
+                if (name.getTagNo() == GeneralName.dNSName) {
+                    root.apply(labels(name), entry, false);
+                } else {
+                    final ByteBuffer key = ipAddress(name);
+                    final Entry[] entries = Entry.remove(addresses.get(key), entry);
+                    if (entries.length == 0) {
+                        addresses.remove(key);
+                    } else {
+                        addresses.put(key, entries);
+                    }
+                }
+            }
+        }
+        for (Certificate certificate : notNull(added, "added is null")) {
+            final Entry entry = new Entry(certificate);
+            for (GeneralName name : names(certificate)) {
+                if (name.getTagNo() == GeneralName.dNSName) {
+                    root.apply(labels(name), entry, true);
+                } else {
+                    final ByteBuffer key = ipAddress(name);
+                    addresses.put(key, Entry.add(addresses.get(key), entry));
+                }
+            }
+        }
+        snapshot = new Snapshot(root.freeze(), addresses);
+    }
+
+    private static List<GeneralName> names(final Certificate certificate) {
+        final GeneralNames sanNames = certificate.getSubjectAlternativeNames();
+        if (sanNames == null) {
+            return Collections.emptyList();
+        }
+        final List<GeneralName> names = new ArrayList<>();
+        for (GeneralName name : sanNames.getNames()) {
+            if (name.getTagNo() == GeneralName.dNSName) {
+                final String dns = ((ASN1String) name.getName()).getString();
+                final int wildcard = dns.indexOf('*');
+                if (wildcard < 0 || wildcard == 0 && dns.startsWith("*.") && dns.indexOf('*', 1) < 0) {
+                    names.add(name);
+                } else {
+                    LOGGER.debug("unsupported wildcard SAN ignored: {}", dns);
+                }
+            } else if (name.getTagNo() == GeneralName.iPAddress) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private static String[] labels(final GeneralName name) {
+        final String[] labels = normalize(((ASN1String) name.getName()).getString()).split("\\.", -1);
+        Collections.reverse(Arrays.asList(labels));
+        return labels;
+    }
+
+    private static ByteBuffer ipAddress(final GeneralName name) {
+        return ByteBuffer.wrap(ASN1OctetString.getInstance(name.getName()).getOctets());
+    }
+
+    private static byte[] address(final String literal) {
+        try {
+            // 字面量地址不会触发DNS查询
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(literal, e);
+        }
+    }
+
+    private static String normalize(final String name) {
+        final String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+    }
+
+    private static final class Snapshot {
+        private final Node root;
+        private final Map<ByteBuffer, Entry[]> addresses;
+
+        private Snapshot(final Node root, final Map<ByteBuffer, Entry[]> addresses) {
+            this.root = root;
+            this.addresses = addresses;
+        }
+    }
+
+    private static final class Node {
+        private static final Node EMPTY = new Node(Collections.emptyMap(), NO_ENTRIES, NO_ENTRIES);
+
+        private final Map<String, Node> children;
+        private final Entry[] exact;
+        private final Entry[] wildcard;
+
+        private Node(final Map<String, Node> children, final Entry[] exact, final Entry[] wildcard) {
+            this.children = children;
+            this.exact = exact;
+            this.wildcard = wildcard;
+        }
+
+        private boolean isEmpty() {
+            return children.isEmpty() && exact.length == 0 && wildcard.length == 0;
+        }
+    }
+
+    /**
+     * 一次批量更新中节点的可变副本, 更新结束后统一冻结为不可变的Node, 未触及的子树原样共享.
+     */
+    private static final class Draft {
+        private final Node origin;
+        private final Map<String, Draft> drafts = new HashMap<>();
+        private Entry[] exact;
+        private Entry[] wildcard;
+
+        private Draft(final Node origin) {
+            this.origin = origin;
+            this.exact = origin.exact;
+            this.wildcard = origin.wildcard;
+        }
+
+        private void apply(final String[] labels, final Entry entry, final boolean add) {
+            final boolean isWildcard = WILDCARD.equals(labels[labels.length - 1]);
+            final int length = isWildcard ? labels.length - 1 : labels.length;
+            Draft draft = this;
+            for (int depth = 0; depth < length; depth++) {
+                draft = draft.child(labels[depth], add);
+                if (draft == null) {
+                    return;
+                }
+            }
+            if (isWildcard) {
+                draft.wildcard = add ? Entry.add(draft.wildcard, entry) : Entry.remove(draft.wildcard, entry);
+            } else {
+                draft.exact = add ? Entry.add(draft.exact, entry) : Entry.remove(draft.exact, entry);
+            }
+        }
+
+        private Draft child(final String label, final boolean create) {
+            Draft draft = drafts.get(label);
+            if (draft == null) {
+                final Node child = origin.children.get(label);
+                if (child == null && !create) {
+                    return null;
+                }
+                draft = new Draft(child == null ? Node.EMPTY : child);
+                drafts.put(label, draft);
+            }
+            return draft;
+        }
+
+        private Node freeze() {
+            if (drafts.isEmpty()) {
+                return exact == origin.exact && wildcard == origin.wildcard ? origin
+                        : new Node(origin.children, exact, wildcard);
+            }
+            final Map<String, Node> children = new HashMap<>(origin.children);
+            for (Map.Entry<String, Draft> child : drafts.entrySet()) {
+                final Node node = child.getValue().freeze();
+                if (node.isEmpty()) {
+                    children.remove(child.getKey());
+                } else {
+                    children.put(child.getKey(), node);
+                }
+            }
+            return new Node(children, exact, wildcard);
+        }
+    }
+
+    private static final class Entry {
+        private final Certificate certificate;
+        private final long notBefore;
+        private final long notAfter;
+
+        private Entry(final Certificate certificate) {
+            this.certificate = certificate;
+            this.notBefore = certificate.getNotBefore().getTime();
+            this.notAfter = certificate.getNotAfter().getTime();
+        }
+
+        /**
+         * 插入后保持按notBefore从新到旧排列, 同一证书不重复插入.
+         */
+        private static Entry[] add(final Entry[] entries, final Entry entry) {
+            if (entries == null) {
+                return new Entry[]{entry};
+            }
+            int index = 0;
+            while (index < entries.length && entries[index].notBefore >= entry.notBefore) {
+                if (entries[index].certificate.equals(entry.certificate)) {
+                    return entries;
+                }
+                index++;
+            }
+            final Entry[] result = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, result, 0, index);
+            result[index] = entry;
+            System.arraycopy(entries, index, result, index + 1, entries.length - index);
+            return result;
+        }
+
+        private static Entry[] remove(final Entry[] entries, final Entry entry) {
+            if (entries == null) {
+                return NO_ENTRIES;
+            }
+            for (int index = 0; index < entries.length; index++) {
+                if (entries[index].certificate.equals(entry.certificate)) {
+                    final Entry[] result = new Entry[entries.length - 1];
+                    System.arraycopy(entries, 0, result, 0, index);
+                    System.arraycopy(entries, index + 1, result, index, result.length - index);
+                    return result;
+                }
+            }
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package io.github.dbstarll.certs.transparency;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.operator.OperatorCreationException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+import static io.github.dbstarll.certs.utils.CertificationAuthorityUtils.signer;
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 记录已签发证书的只追加Merkle审计日志, 哈希规则与RFC 6962(Certificate Transparency)一致.
+ *
+ * <p>磁盘布局: 目录下每一层一个文件(level-00.dat, level-01.dat, ...), 第L层的第i个节点是覆盖叶子区间
+ * [i * 2^L, (i + 1) * 2^L)的完整子树哈希, 按定长32字节连续存放. 追加时只写入新完成的节点;
+ * 任意区间的树哈希只需读取O(log n)个节点, 包含证明和一致性证明由O(log n)个区间哈希组成, 共读取O(log² n)个节点.
+ * 最近一次签名的树头保存在sth.dat中, 重新打开日志后仍可获得.</p>
+ *
+ * <p>sth.dat中的树大小即为提交点: 打开时各层文件截断到该大小, 崩溃时写了一半、尚未签名确认的批次被丢弃,
+ * 调用方重试时不会重复追加. 仅当sth.dat不存在时, 才为已有的叶子重新签名树头.</p>
+ */
+public final class MerkleAuditLog implements Closeable {
+    /**
+     * 哈希长度(SHA-256).
+     */
+    public static final int HASH_LENGTH = 32;
+
+    private static final int MAX_LEVELS = 64;
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+    private static final String TREE_HEAD_FILE = "sth.dat";
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    private final Path directory;
+    private final PrivateKey signingKey;
+    private final SignatureAlgorithm signatureAlgorithm;
+    private final AtomicReferenceArray<FileChannel> levels = new AtomicReferenceArray<>(MAX_LEVELS);
+    /**
+     * frontier[L]为第L层尚未配对的左侧节点, 仅当size的第L位为1时有效.
+     */
+    private final byte[][] frontier = new byte[MAX_LEVELS][];
+    private volatile long size;
+    private volatile SignedTreeHead treeHead;
+
+    private MerkleAuditLog(final Path directory, final PrivateKey signingKey,
+                           final SignatureAlgorithm signatureAlgorithm) {
+        this.directory = directory;
+        this.signingKey = signingKey;
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    /**
+     * 打开(或新建)一个审计日志.
+     *
+     * @param directory          日志目录
+     * @param signingKey         树头签名私钥
+     * @param signatureAlgorithm 树头签名算法
+     * @return MerkleAuditLog
+     * @throws IOException               io exception
+     * @throws OperatorCreationException 树头不存在而需要重新签名时失败
+     */
+    public static MerkleAuditLog open(final Path directory, final PrivateKey signingKey,
+                                      final SignatureAlgorithm signatureAlgorithm)
+            throws IOException, OperatorCreationException {
+        final MerkleAuditLog log = new MerkleAuditLog(Files.createDirectories(notNull(directory)),
+                notNull(signingKey), notNull(signatureAlgorithm));
+        try {
+            synchronized (log) {
+                log.loadTreeHead();
+            }
+        } catch (IOException | OperatorCreationException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * 当前日志中的条目数.
+     *
+     * @return 条目数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 最近一次签名的树头, 日志为空时为null.
+     *
+     * @return 最近一次签名的树头
+     */
+    public SignedTreeHead getTreeHead() {
+        return treeHead;
+    }
+
+    /**
+     * 追加一个已签发的证书.
+     *
+     * @param certificate 已签发的证书
+     * @return 包含该证书的新树头
+     * @throws IOException               io exception
+     * @throws OperatorCreationException OperatorCreationException
+     */
+    public SignedTreeHead append(final Certificate certificate) throws IOException, OperatorCreationException {
+        return append(Collections.singletonList(certificate));
+    }
+
+    /**
+     * 批量追加已签发的证书. 叶子哈希并行计算, 整批只落盘一次并只签名一个树头,
+     * 新条目占据索引区间[treeSize - certificates.size(), treeSize).
+     *
+     * @param certificates 已签发的证书
+     * @return 包含整批证书的新树头
+     * @throws IOException               io exception
+     * @throws OperatorCreationException OperatorCreationException
+     */
+    public SignedTreeHead append(final Collection<Certificate> certificates)
+            throws IOException, OperatorCreationException {
+        final List<byte[]> leafHashes;
+        try {
+            leafHashes = certificates.parallelStream().map(c -> {
+                try {
+                    return leafHash(c.getEncoded());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return appendLeafHashes(leafHashes);
+    }
+
+    private synchronized SignedTreeHead appendLeafHashes(final List<byte[]> leafHashes)
+            throws IOException, OperatorCreationException {
+        long n = size;
+        if (!leafHashes.isEmpty()) {
+            try {
+                n = writeLeafHashes(leafHashes);
+            } catch (IOException | RuntimeException e) {
+                // 丢弃内存中部分更新的frontier和未提交的节点, 回到上次提交的大小, 避免重试时重复追加
+                recover(size);
+                throw e;
+            }
+            size = n;
+        }
+        if (n > 0 && (treeHead == null || treeHead.getTreeSize() != n)) {
+            try {
+                signTreeHead(n);
+            } catch (IOException | OperatorCreationException | RuntimeException e) {
+                // 树头未保存, 本批未提交
+                recover(treeHead == null ? 0 : treeHead.getTreeSize());
+                throw e;
+            }
+        }
+        return treeHead;
+    }
+
+    private void signTreeHead(final long n) throws IOException, OperatorCreationException {
+        final SignedTreeHead sth = SignedTreeHead.sign(n, System.currentTimeMillis(), rootHash(n),
+                signer(signatureAlgorithm, signingKey));
+        final Path file = directory.resolve(TREE_HEAD_FILE);
+        final Path temp = directory.resolve(TREE_HEAD_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(channel, ByteBuffer.wrap(sth.toBytes()), 0);
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        treeHead = sth;
+    }
+
+    /**
+     * 加载保存的树头, 并把各层文件恢复到树头的大小; 树头缺失时以叶子层为准恢复并重新签名.
+     */
+    private void loadTreeHead() throws IOException, OperatorCreationException {
+        final Path file = directory.resolve(TREE_HEAD_FILE);
+        if (!Files.exists(file)) {
+            recover(Long.MAX_VALUE);
+            if (size > 0) {
+                signTreeHead(size);
+            }
+            return;
+        }
+        final SignedTreeHead sth = SignedTreeHead.fromBytes(Files.readAllBytes(file));
+        recover(sth.getTreeSize());
+        if (size != sth.getTreeSize()) {
+            throw new IOException("log is shorter than signed tree head: " + size + " < " + sth.getTreeSize());
+        } else if (!Arrays.equals(sth.getRootHash(), rootHash(size))) {
+            throw new IOException("root hash does not match signed tree head at size " + size);
+        }
+        treeHead = sth;
+    }
+
+    private long writeLeafHashes(final List<byte[]> leafHashes) throws IOException {
+        long n = size;
+        final ByteBuffer[] pending = new ByteBuffer[MAX_LEVELS];
+        for (byte[] leafHash : leafHashes) {
+            byte[] hash = leafHash;
+            int level = 0;
+            put(pending, level, hash, leafHashes.size());
+            while ((n >>> level & 1) == 1) {
+                hash = nodeHash(frontier[level], hash);
+                frontier[level] = null;
+                put(pending, ++level, hash, leafHashes.size());
+            }
+            frontier[level] = hash;
+            n++;
+        }
+        // 先写高层再写叶子层, 叶子层长度即为已提交的条目数
+        for (int level = MAX_LEVELS - 1; level >= 0; level--) {
+            if (pending[level] != null) {
+                final ByteBuffer buffer = pending[level];
+                buffer.flip();
+                final long nodes = (n >>> level) - buffer.remaining() / HASH_LENGTH;
+                write(channel(level), buffer, nodes * HASH_LENGTH);
+            }
+        }
+        for (int level = MAX_LEVELS - 1; level >= 0; level--) {
+            if (pending[level] != null) {
+                levels.get(level).force(false);
+            }
+        }
+        return n;
+    }
+
+    private static void put(final ByteBuffer[] pending, final int level, final byte[] hash, final int batchSize) {
+        if (pending[level] == null) {
+            pending[level] = ByteBuffer.allocate(((batchSize >>> level) + 2) * HASH_LENGTH);
+        }
+        pending[level].put(hash);
+    }
+
+    /**
+     * 计算指定大小的树的根哈希.
+     *
+     * @param treeSize 树大小, 不超过当前日志大小
+     * @return 根哈希
+     * @throws IOException io exception
+     */
+    public byte[] rootHash(final long treeSize) throws IOException {
+        isTrue(treeSize >= 0 && treeSize <= size, "treeSize out of range: %d", treeSize);
+        return treeSize == 0 ? SHA256.get().digest() : subtreeHash(0, treeSize);
+    }
+
+    /**
+     * 获得指定叶子在指定大小的树中的包含证明(RFC 6962 2.1.1).
+     *
+     * @param leafIndex 叶子索引
+     * @param treeSize  树大小, 不超过当前日志大小
+     * @return 包含证明的哈希路径
+     * @throws IOException io exception
+     */
+    public List<byte[]> inclusionProof(final long leafIndex, final long treeSize) throws IOException {
+        isTrue(treeSize > 0 && treeSize <= size, "treeSize out of range: %d", treeSize);
+        isTrue(leafIndex >= 0 && leafIndex < treeSize, "leafIndex out of range: %d", leafIndex);
+        long m = leafIndex;
+        long start = 0;
+        long n = treeSize;
+        final List<byte[]> reversed = new ArrayList<>();
+        while (n > 1) {
+            final long k = Long.highestOneBit(n - 1);
+            if (m < k) {
+                reversed.add(subtreeHash(start + k, n - k));
+                n = k;
+            } else {
+                reversed.add(subtreeHash(start, k));
+                start += k;
+                m -= k;
+                n -= k;
+            }
+        }
+        return reverse(reversed);
+    }
+
+    /**
+     * 获得两个树大小之间的一致性证明(RFC 6962 2.1.2).
+     *
+     * @param firstSize  旧树大小
+     * @param secondSize 新树大小, 不超过当前日志大小
+     * @return 一致性证明的哈希路径
+     * @throws IOException io exception
+     */
+    public List<byte[]> consistencyProof(final long firstSize, final long secondSize) throws IOException {
+        isTrue(secondSize > 0 && secondSize <= size, "secondSize out of range: %d", secondSize);
+        isTrue(firstSize > 0 && firstSize <= secondSize, "firstSize out of range: %d", firstSize);
+        final List<byte[]> reversed = new ArrayList<>();
+        long m = firstSize;
+        long start = 0;
+        long n = secondSize;
+        boolean complete = true;
+        while (m != n) {
+            final long k = Long.highestOneBit(n - 1);
+            if (m <= k) {
+                reversed.add(subtreeHash(start + k, n - k));
+                n = k;
+            } else {
+                reversed.add(subtreeHash(start, k));
+                start += k;
+                m -= k;
+                n -= k;
+                complete = false;
+            }
+        }
+        if (!complete) {
+            reversed.add(subtreeHash(start, m));
+        }
+        return reverse(reversed);
+    }
+
+    private static List<byte[]> reverse(final List<byte[]> reversed) {
+        Collections.reverse(reversed);
+        return reversed;
+    }
+
+    /**
+     * 校验包含证明(RFC 9162 2.1.3.2).
+     *
+     * @param leafHash  叶子哈希
+     * @param leafIndex 叶子索引
+     * @param treeSize  树大小
+     * @param proof     包含证明的哈希路径
+     * @param rootHash  树根哈希
+     * @return 证明是否有效
+     */
+    public static boolean verifyInclusion(final byte[] leafHash, final long leafIndex, final long treeSize,
+                                          final List<byte[]> proof, final byte[] rootHash) {
+        if (leafIndex < 0 || leafIndex >= treeSize) {
+            return false;
+        }
+        long fn = leafIndex;
+        long sn = treeSize - 1;
+        byte[] r = leafHash;
+        for (byte[] p : proof) {
+            if (sn == 0) {
+                return false;
+            }
+            if ((fn & 1) == 1 || fn == sn) {
+                r = nodeHash(p, r);
+                while ((fn & 1) == 0 && fn != 0) {
+                    fn >>>= 1;
+                    sn >>>= 1;
+                }
+            } else {
+                r = nodeHash(r, p);
+            }
+            fn >>>= 1;
+            sn >>>= 1;
+        }
+        return sn == 0 && MessageDigest.isEqual(r, rootHash);
+    }
+
+    /**
+     * 校验一致性证明(RFC 9162 2.1.4.2).
+     *
+     * @param firstSize  旧树大小
+     * @param secondSize 新树大小
+     * @param firstRoot  旧树根哈希
+     * @param secondRoot 新树根哈希
+     * @param proof      一致性证明的哈希路径
+     * @return 证明是否有效
+     */
+    public static boolean verifyConsistency(final long firstSize, final long secondSize, final byte[] firstRoot,
+                                            final byte[] secondRoot, final List<byte[]> proof) {
+        if (firstSize < 1 || firstSize > secondSize) {
+            return false;
+        } else if (firstSize == secondSize) {
+            return proof.isEmpty() && MessageDigest.isEqual(firstRoot, secondRoot);
+        }
+        final List<byte[]> path = new ArrayList<>(proof.size() + 1);
+        if (Long.bitCount(firstSize) == 1) {
+            path.add(firstRoot);
+        }
+        path.addAll(proof);
+        if (path.isEmpty()) {
+            return false;
+        }
+        long fn = firstSize - 1;
+        long sn = secondSize - 1;
+        while ((fn & 1) == 1) {
+            fn >>>= 1;
+            sn >>>= 1;
+        }
+        byte[] fr = path.get(0);
+        byte[] sr = path.get(0);
+        for (byte[] c : path.subList(1, path.size())) {
+            if (sn == 0) {
+                return false;
+            }
+            if ((fn & 1) == 1 || fn == sn) {
+                fr = nodeHash(c, fr);
+                sr = nodeHash(c, sr);
+                while ((fn & 1) == 0 && fn != 0) {
+                    fn >>>= 1;
+                    sn >>>= 1;
+                }
+            } else {
+                sr = nodeHash(sr, c);
+            }
+            fn >>>= 1;
+            sn >>>= 1;
+        }
+        return sn == 0 && MessageDigest.isEqual(fr, firstRoot) && MessageDigest.isEqual(sr, secondRoot);
+    }
+
+    /**
+     * 计算证书的叶子哈希: SHA-256(0x00 || DER).
+     *
+     * @param encoded DER编码的证书
+     * @return 叶子哈希
+     */
+    public static byte[] leafHash(final byte[] encoded) {
+        final MessageDigest digest = SHA256.get();
+        digest.update(LEAF_PREFIX);
+        return digest.digest(encoded);
+    }
+
+    private static byte[] nodeHash(final byte[] left, final byte[] right) {
+        final MessageDigest digest = SHA256.get();
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    private byte[] subtreeHash(final long start, final long count) throws IOException {
+        if (Long.bitCount(count) == 1 && start % count == 0) {
+            final int level = Long.numberOfTrailingZeros(count);
+            return readNode(level, start >>> level);
+        }
+        final long k = Long.highestOneBit(count - 1);
+        return nodeHash(subtreeHash(start, k), subtreeHash(start + k, count - k));
+    }
+
+    private byte[] readNode(final int level, final long index) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HASH_LENGTH);
+        final FileChannel channel = levels.get(level);
+        long position = index * HASH_LENGTH;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("missing node at level " + level + ", index " + index);
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * 获得(必要时打开)指定层的文件, 只在持有锁时调用; 通过AtomicReferenceArray发布给不持锁的读者.
+     */
+    private FileChannel channel(final int level) throws IOException {
+        FileChannel channel = levels.get(level);
+        if (channel == null) {
+            channel = FileChannel.open(directory.resolve(String.format("level-%02d.dat", level)),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            levels.set(level, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * 以叶子层为准恢复各层文件: 截断多余的节点, 重新计算崩溃时未写入的节点, 并重建frontier.
+     *
+     * @param committed 已提交的条目数上限, 超出部分(未确认的写入)被截断
+     */
+    private void recover(final long committed) throws IOException {
+        final long leaves = Math.min(channel(0).size() / HASH_LENGTH, committed);
+        levels.get(0).truncate(leaves * HASH_LENGTH);
+        for (int level = 1; level < MAX_LEVELS && (leaves >>> level) > 0; level++) {
+            final long expected = leaves >>> level;
+            final FileChannel channel = channel(level);
+            final long actual = Math.min(channel.size() / HASH_LENGTH, expected);
+            channel.truncate(actual * HASH_LENGTH);
+            for (long index = actual; index < expected; index++) {
+                final byte[] hash = nodeHash(readNode(level - 1, index * 2), readNode(level - 1, index * 2 + 1));
+                write(channel, ByteBuffer.wrap(hash), index * HASH_LENGTH);
+            }
+            channel.force(false);
+        }
+        Arrays.fill(frontier, null);
+        for (int level = 0; level < MAX_LEVELS && (leaves >>> level) > 0; level++) {
+            if ((leaves >>> level & 1) == 1) {
+                frontier[level] = readNode(level, (leaves >>> level) - 1);
+            }
+        }
+        size = leaves;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException error = null;
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            final FileChannel channel = levels.get(level);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
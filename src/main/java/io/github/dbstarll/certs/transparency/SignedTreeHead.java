@@ -0,0 +1,151 @@
+package io.github.dbstarll.certs.transparency;
+
+import io.github.dbstarll.certs.utils.CryptoProviders;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.Provider;
+import java.security.PublicKey;
+
+/**
+ * 已签名的Merkle树头(Signed Tree Head).
+ *
+ * <p>签名的内容与RFC 6962 3.5中的TreeHeadSignature一致: version(v1), signature_type(tree_hash),
+ * timestamp, tree_size, sha256_root_hash.</p>
+ */
+public final class SignedTreeHead implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final byte VERSION = 1;
+    private static final byte RFC6962_V1 = 0;
+    private static final byte TREE_HASH = 1;
+
+    private final long treeSize;
+    private final long timestamp;
+    private final byte[] rootHash;
+    private final AlgorithmIdentifier signatureAlgorithm;
+    private final byte[] signature;
+
+    private SignedTreeHead(final long treeSize, final long timestamp, final byte[] rootHash,
+                           final AlgorithmIdentifier signatureAlgorithm, final byte[] signature) {
+        this.treeSize = treeSize;
+        this.timestamp = timestamp;
+        this.rootHash = rootHash;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.signature = signature;
+    }
+
+    /**
+     * get tree size.
+     *
+     * @return tree size
+     */
+    public long getTreeSize() {
+        return treeSize;
+    }
+
+    /**
+     * get timestamp in milliseconds.
+     *
+     * @return timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * get root hash.
+     *
+     * @return root hash
+     */
+    public byte[] getRootHash() {
+        return rootHash.clone();
+    }
+
+    /**
+     * get signature.
+     *
+     * @return signature
+     */
+    public byte[] getSignature() {
+        return signature.clone();
+    }
+
+    /**
+     * 使用签发者公钥校验树头签名.
+     *
+     * @param publicKey 签发者公钥
+     * @return 签名是否有效
+     * @throws OperatorCreationException OperatorCreationException
+     * @throws IOException               IOException
+     */
+    public boolean verify(final PublicKey publicKey) throws OperatorCreationException, IOException {
+        final JcaContentVerifierProviderBuilder builder = new JcaContentVerifierProviderBuilder();
+        final Provider provider = CryptoProviders.verification(
+                new DefaultAlgorithmNameFinder().getAlgorithmName(signatureAlgorithm));
+        if (provider != null) {
+            builder.setProvider(provider);
+        }
+        final ContentVerifier verifier = builder.build(publicKey).get(signatureAlgorithm);
+        try (OutputStream out = verifier.getOutputStream()) {
+            out.write(toBeSigned(treeSize, timestamp, rootHash));
+        }
+        return verifier.verify(signature);
+    }
+
+    static SignedTreeHead sign(final long treeSize, final long timestamp, final byte[] rootHash,
+                               final ContentSigner signer) throws IOException {
+        try (OutputStream out = signer.getOutputStream()) {
+            out.write(toBeSigned(treeSize, timestamp, rootHash));
+        }
+        return new SignedTreeHead(treeSize, timestamp, rootHash.clone(),
+                signer.getAlgorithmIdentifier(), signer.getSignature());
+    }
+
+    byte[] toBytes() throws IOException {
+        final byte[] algorithm = signatureAlgorithm.getEncoded();
+        return ByteBuffer.allocate(1 + 8 + 8 + 4 + rootHash.length + 4 + algorithm.length + 4 + signature.length)
+                .put(VERSION).putLong(treeSize).putLong(timestamp)
+                .putInt(rootHash.length).put(rootHash)
+                .putInt(algorithm.length).put(algorithm)
+                .putInt(signature.length).put(signature)
+                .array();
+    }
+
+    static SignedTreeHead fromBytes(final byte[] bytes) throws IOException {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.get() != VERSION) {
+                throw new IOException("unsupported signed tree head version");
+            }
+            final long treeSize = buffer.getLong();
+            final long timestamp = buffer.getLong();
+            final byte[] rootHash = read(buffer);
+            final AlgorithmIdentifier algorithm = AlgorithmIdentifier.getInstance(read(buffer));
+            return new SignedTreeHead(treeSize, timestamp, rootHash, algorithm, read(buffer));
+        } catch (BufferUnderflowException | NegativeArraySizeException | IllegalArgumentException e) {
+            throw new IOException("corrupted signed tree head", e);
+        }
+    }
+
+    private static byte[] read(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] toBeSigned(final long treeSize, final long timestamp, final byte[] rootHash) {
+        return ByteBuffer.allocate(1 + 1 + 8 + 8 + rootHash.length)
+                .put(RFC6962_V1).put(TREE_HASH).putLong(timestamp).putLong(treeSize).put(rootHash)
+                .array();
+    }
+}
@@ -4,9 +4,8 @@ import io.github.dbstarll.certs.model.Certificate;
 import io.github.dbstarll.certs.model.CertificateSigningRequest;
 import io.github.dbstarll.certs.model.CertificationAuthority;
 import io.github.dbstarll.certs.model.Subject;
-import io.github.dbstarll.utils.lang.security.InstanceException;
+import io.github.dbstarll.certs.publish.FileSystemPublisher;
 import io.github.dbstarll.utils.lang.security.KeyPairGeneratorAlgorithm;
-import io.github.dbstarll.utils.lang.security.SecurityFactory;
 import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.asn1.x500.X500Name;
@@ -21,9 +20,13 @@ import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.Security;
 
 public final class CertificationAuthorityUtils {
@@ -36,19 +39,52 @@ public final class CertificationAuthorityUtils {
     }
 
     /**
-     * 一次性重建所有证书.
+     * 一次性重建所有证书, 产物输出到标准输出.
      *
      * @throws Exception 任何异常都抛出
      */
     public static void rebuild() throws Exception {
         final CertificationAuthority caRoot = buildOne("ROOT", null, null, 2048, null);
-        final CertificationAuthority caServer = buildOne("SERVER", caRoot, 0, 2048, null);
+        buildOne("SERVER", caRoot, 0, 2048, null);
         final CertificationAuthority caClient = buildOne("CLIENT", caRoot, 1, 2048, null);
-        final CertificationAuthority caYeeCloud = buildOne("YeeCloud", caClient, 0, 2048, null);
+        buildOne("YeeCloud", caClient, 0, 2048, null);
     }
 
     /**
-     * 构建CA证书.
+     * 一次性重建所有证书, 并发布到$CA_HOME目录.
+     *
+     * @param caHome CA根目录
+     * @throws Exception 任何异常都抛出
+     */
+    public static void rebuild(final Path caHome) throws Exception {
+        try (FileSystemPublisher publisher = new FileSystemPublisher(caHome)) {
+            final CertificationAuthority caRoot = buildOne(publisher, "ROOT", null, null, 2048, null);
+            buildOne(publisher, "SERVER", caRoot, 0, 2048, null);
+            final CertificationAuthority caClient = buildOne(publisher, "CLIENT", caRoot, 1, 2048, null);
+            buildOne(publisher, "YeeCloud", caClient, 0, 2048, null);
+        }
+    }
+
+    /**
+     * 构建CA证书, 不发布任何产物.
+     *
+     * @param caName  name of new ca
+     * @param issuer  Issuer, The parent certificate
+     * @param pathLen pathlen of CA basicConstraints
+     * @param numbits numbits of private key
+     * @return CertificationAuthority
+     * @throws Exception 任何异常都抛出
+     */
+    public static CertificationAuthority buildOne(final String caName,
+                                                  final CertificationAuthority issuer,
+                                                  final Integer pathLen,
+                                                  final int numbits)
+            throws Exception {
+        return buildOne(null, caName, issuer, pathLen, numbits, null);
+    }
+
+    /**
+     * 构建CA证书, 并将私钥、证书签发申请和证书输出到标准输出.
      *
      * @param caName  name of new ca
      * @param issuer  Issuer, The parent certificate
@@ -64,6 +100,39 @@ public final class CertificationAuthorityUtils {
                                                   final int numbits,
                                                   final String phrase)
             throws Exception {
+        final CertificationAuthority ca = buildOne(null, caName, issuer, pathLen, numbits, phrase);
+
+        // $CA_NAME.key
+        ca.writeKey(debugWriter(), StringUtils.isBlank(phrase) ? null : encryptor("AES-256-CBC", phrase));
+
+        // $CA_NAME.csr
+        ca.writeCSR(debugWriter(), null);
+
+        // $CA_NAME.cer
+        ca.writeCER(debugWriter(), null);
+
+        return ca;
+    }
+
+    /**
+     * 构建CA证书, 并通过发布器发布私钥、证书签发申请、证书以及证书链.
+     *
+     * @param publisher 发布器, 为null时不发布
+     * @param caName    name of new ca
+     * @param issuer    Issuer, The parent certificate
+     * @param pathLen   pathlen of CA basicConstraints
+     * @param numbits   numbits of private key
+     * @param phrase    private key pass phrase
+     * @return CertificationAuthority
+     * @throws Exception 任何异常都抛出
+     */
+    public static CertificationAuthority buildOne(final FileSystemPublisher publisher,
+                                                  final String caName,
+                                                  final CertificationAuthority issuer,
+                                                  final Integer pathLen,
+                                                  final int numbits,
+                                                  final String phrase)
+            throws Exception {
 //# 创建数据库文件
 //    mkdir -p $CA_HOME/.db
 //    touch $CA_HOME/.db/index
@@ -110,25 +179,23 @@ public final class CertificationAuthorityUtils {
         }
 //        System.out.println(crt);
 
-        final CertificationAuthority ca = new CertificationAuthority(caName, keyPair, subject, csr, crt);
-
-        // $CA_NAME.key
-        ca.writeKey(debugWriter(), StringUtils.isBlank(phrase) ? null : encryptor("AES-256-CBC", phrase));
-
-        // $CA_NAME.csr
-        ca.writeCSR(debugWriter(), null);
+        final CertificationAuthority ca = new CertificationAuthority(caName, keyPair, subject, csr, crt, issuer);
 
-        // $CA_NAME.cer
-        ca.writeCER(debugWriter(), null);
+        if (publisher != null) {
+            // $CA_NAME.key, $CA_NAME.csr, $CA_NAME.cer, $CA_NAME-chain.cer
+            publisher.publish(ca, StringUtils.isBlank(phrase) ? null : encryptor("AES-256-CBC", phrase)).get();
+        }
 
         return ca;
     }
 
     private static KeyPair genKeyPair(final KeyPairGeneratorAlgorithm algorithm, final int keySize)
-            throws InstanceException, NoSuchAlgorithmException {
-        return SecurityFactory.builder(algorithm)
-                .keySize(keySize, SecureRandomUtils.get())
-                .build().genKeyPair();
+            throws NoSuchAlgorithmException {
+        final Provider provider = CryptoProviders.keyGeneration(algorithm.name());
+        final KeyPairGenerator generator = provider == null ? KeyPairGenerator.getInstance(algorithm.name())
+                : KeyPairGenerator.getInstance(algorithm.name(), provider);
+        generator.initialize(keySize, SecureRandomUtils.get());
+        return generator.genKeyPair();
     }
 
     /**
@@ -164,7 +231,13 @@ public final class CertificationAuthorityUtils {
      */
     public static ContentSigner signer(final SignatureAlgorithm algorithm, final PrivateKey privateKey)
             throws OperatorCreationException {
-        return new JcaContentSignerBuilder(algorithm.name()).setSecureRandom(SecureRandomUtils.get()).build(privateKey);
+        final JcaContentSignerBuilder builder = new JcaContentSignerBuilder(algorithm.name())
+                .setSecureRandom(SecureRandomUtils.get());
+        final Provider provider = CryptoProviders.signing(algorithm.name());
+        if (provider != null) {
+            builder.setProvider(provider);
+        }
+        return builder.build(privateKey);
     }
 
     private static Writer debugWriter() {
@@ -180,10 +253,15 @@ public final class CertificationAuthorityUtils {
     /**
      * 主程序入口.
      *
-     * @param args 入参
+     * @param args 可选的CA根目录, 指定时发布到该目录, 否则输出到标准输出
      * @throws Exception 任何异常都抛出
      */
     public static void main(final String[] args) throws Exception {
-        rebuild();
+        CryptoProviders.init();
+        if (args.length > 0) {
+            rebuild(Paths.get(args[0]));
+        } else {
+            rebuild();
+        }
     }
 }
@@ -0,0 +1,337 @@
+package io.github.dbstarll.certs.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 为密钥生成、签名、验签分别选择最快的JCA Provider.
+ *
+ * <p>选择顺序: 系统属性certs.provider.&lt;operation&gt;.&lt;algorithm&gt;(算法名不区分大小写),
+ * 其次certs.provider.&lt;operation&gt;(operation取值为keygen、sign、verify), 都未配置时对支持该算法的Provider
+ * 做一次短时间的微基准测试, 选用吞吐最高者. 微基准测试只在启动时由{@link #init()}或{@link #warmUp}显式执行,
+ * 签发路径上的查询不会触发; 未预热的(操作, 算法)只采用配置的Provider, 否则按Provider注册顺序选择.
+ * 结果记录在日志中.</p>
+ */
+public final class CryptoProviders {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CryptoProviders.class);
+
+    private static final String PROPERTY_PREFIX = "certs.provider.";
+    private static final long BENCHMARK_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong(PROPERTY_PREFIX + "benchmark.millis", 100));
+    private static final int MIN_ITERATIONS = 3;
+    private static final byte[] PAYLOAD = new byte[1024];
+    private static final String[] DEFAULT_KEY_ALGORITHMS = {"RSA", "EC"};
+    private static final String[] DEFAULT_SIGNATURE_ALGORITHMS = {"SHA256withRSA", "SHA256withECDSA"};
+
+    private static final ConcurrentMap<String, Selection> SELECTED = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, KeyPair> SAMPLE_KEYS = new ConcurrentHashMap<>();
+
+    /**
+     * 操作类型.
+     */
+    public enum Operation {
+        /**
+         * 密钥生成(KeyPairGenerator).
+         */
+        KEY_GENERATION("keygen", "KeyPairGenerator"),
+        /**
+         * 签名(Signature).
+         */
+        SIGNING("sign", "Signature"),
+        /**
+         * 验签(Signature).
+         */
+        VERIFICATION("verify", "Signature");
+
+        private final String property;
+        private final String service;
+
+        Operation(final String property, final String service) {
+            this.property = property;
+            this.service = service;
+        }
+    }
+
+    private CryptoProviders() {
+        // 禁止实例化
+    }
+
+    /**
+     * 获得用于生成密钥的Provider.
+     *
+     * @param algorithm 密钥算法, 如RSA
+     * @return Provider, 为null时按Provider注册顺序选择
+     */
+    public static Provider keyGeneration(final String algorithm) {
+        return select(Operation.KEY_GENERATION, algorithm);
+    }
+
+    /**
+     * 获得用于签名的Provider.
+     *
+     * @param algorithm 签名算法, 如SHA256withRSA
+     * @return Provider, 为null时按Provider注册顺序选择
+     */
+    public static Provider signing(final String algorithm) {
+        return select(Operation.SIGNING, algorithm);
+    }
+
+    /**
+     * 获得用于验签的Provider.
+     *
+     * @param algorithm 签名算法, 如SHA256withRSA
+     * @return Provider, 为null时按Provider注册顺序选择
+     */
+    public static Provider verification(final String algorithm) {
+        return select(Operation.VERIFICATION, algorithm);
+    }
+
+    /**
+     * 启动时为常用的密钥算法和签名算法预先选择Provider.
+     */
+    public static void init() {
+        for (String algorithm : DEFAULT_KEY_ALGORITHMS) {
+            warmUp(Operation.KEY_GENERATION, algorithm);
+        }
+        for (String algorithm : DEFAULT_SIGNATURE_ALGORITHMS) {
+            warmUp(Operation.SIGNING, algorithm);
+            warmUp(Operation.VERIFICATION, algorithm);
+        }
+    }
+
+    /**
+     * 为指定操作与算法选择Provider, 必要时执行微基准测试, 应在启动时调用.
+     *
+     * @param operation 操作类型
+     * @param algorithm 算法
+     * @return Provider, 为null时按Provider注册顺序选择
+     */
+    public static Provider warmUp(final Operation operation, final String algorithm) {
+        final String key = key(operation, algorithm);
+        final Selection selected = SELECTED.get(key);
+        if (selected != null && selected.warmedUp) {
+            return selected.provider;
+        }
+        // 在ConcurrentHashMap的锁之外执行微基准测试, 覆盖预热前查询时只按配置得到的结果
+        final Selection chosen = new Selection(choose(operation, algorithm), true);
+        SELECTED.put(key, chosen);
+        return chosen.provider;
+    }
+
+    /**
+     * 获得指定操作与算法的Provider, 只查询预热结果和配置, 不执行微基准测试.
+     *
+     * @param operation 操作类型
+     * @param algorithm 算法
+     * @return Provider, 为null时按Provider注册顺序选择
+     */
+    public static Provider select(final Operation operation, final String algorithm) {
+        return SELECTED.computeIfAbsent(key(operation, algorithm),
+                k -> new Selection(configured(operation, algorithm), false)).provider;
+    }
+
+    /**
+     * 清除已选择的Provider, 仅供测试使用.
+     */
+    static void reset() {
+        SELECTED.clear();
+    }
+
+    private static String key(final Operation operation, final String algorithm) {
+        return operation.property + '.' + algorithm.toUpperCase(Locale.ROOT);
+    }
+
+    private static Provider choose(final Operation operation, final String algorithm) {
+        final Provider configured = configured(operation, algorithm);
+        if (configured != null) {
+            LOGGER.info("{} {}: use configured provider {}", operation, algorithm, configured.getName());
+            return configured;
+        }
+
+        final Provider[] candidates = Security.getProviders(operation.service + '.' + algorithm);
+        if (candidates == null || candidates.length == 0) {
+            LOGGER.warn("{} {}: no provider available", operation, algorithm);
+            return null;
+        } else if (candidates.length == 1) {
+            LOGGER.info("{} {}: use the only provider {}", operation, algorithm, candidates[0].getName());
+            return candidates[0];
+        }
+
+        Provider fastest = null;
+        double best = 0;
+        final List<String> results = new ArrayList<>(candidates.length);
+        for (Provider candidate : candidates) {
+            try {
+                final double opsPerSecond = benchmark(operation, algorithm, candidate);
+                results.add(String.format(Locale.ROOT, "%s=%.1f ops/s", candidate.getName(), opsPerSecond));
+                if (opsPerSecond > best) {
+                    best = opsPerSecond;
+                    fastest = candidate;
+                }
+            } catch (GeneralSecurityException | RuntimeException e) {
+                results.add(candidate.getName() + "=failed");
+                LOGGER.debug("{} {}: benchmark failed on {}", operation, algorithm, candidate.getName(), e);
+            }
+        }
+        LOGGER.info("{} {}: select provider {} by benchmark {}", operation, algorithm,
+                fastest == null ? "<registration order>" : fastest.getName(), results);
+        return fastest;
+    }
+
+    private static Provider configured(final Operation operation, final String algorithm) {
+        String name = property(PROPERTY_PREFIX + operation.property + '.' + algorithm);
+        if (name == null) {
+            name = System.getProperty(PROPERTY_PREFIX + operation.property);
+        }
+        if (name == null) {
+            return null;
+        }
+        final Provider provider = Security.getProvider(name);
+        if (provider == null || provider.getService(operation.service, algorithm) == null) {
+            LOGGER.warn("{} {}: configured provider {} not available, ignored", operation, algorithm, name);
+            return null;
+        }
+        return provider;
+    }
+
+    /**
+     * 不区分大小写地读取系统属性, 算法名在JCA中不区分大小写, 如SHA256WITHRSA与SHA256withRSA.
+     */
+    private static String property(final String key) {
+        final String value = System.getProperty(key);
+        if (value != null) {
+            return value;
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.equalsIgnoreCase(key)) {
+                return System.getProperty(name);
+            }
+        }
+        return null;
+    }
+
+    private static double benchmark(final Operation operation, final String algorithm, final Provider provider)
+            throws GeneralSecurityException {
+        final BenchmarkOperation op;
+        if (operation == Operation.KEY_GENERATION) {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm, provider);
+            final int keySize = defaultKeySize(algorithm);
+            if (keySize > 0) {
+                generator.initialize(keySize, SecureRandomUtils.get());
+            }
+            op = generator::generateKeyPair;
+        } else {
+            final KeyPair keyPair = sampleKeyPair(algorithm);
+            final Signature signature = Signature.getInstance(algorithm, provider);
+            if (operation == Operation.SIGNING) {
+                op = () -> {
+                    signature.initSign(keyPair.getPrivate(), SecureRandomUtils.get());
+                    signature.update(PAYLOAD);
+                    signature.sign();
+                };
+            } else {
+                final Signature signer = Signature.getInstance(algorithm);
+                signer.initSign(keyPair.getPrivate());
+                signer.update(PAYLOAD);
+                final byte[] signed = signer.sign();
+                op = () -> {
+                    signature.initVerify(keyPair.getPublic());
+                    signature.update(PAYLOAD);
+                    if (!signature.verify(signed)) {
+                        throw new GeneralSecurityException("verify failed");
+                    }
+                };
+            }
+        }
+
+        // 预热后计时
+        run(op, BENCHMARK_NANOS / 4);
+        final long start = System.nanoTime();
+        final int iterations = run(op, BENCHMARK_NANOS);
+        return iterations * (double) TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+    }
+
+    private static int run(final BenchmarkOperation op, final long budgetNanos) throws GeneralSecurityException {
+        final long deadline = System.nanoTime() + budgetNanos;
+        int iterations = 0;
+        while (iterations < MIN_ITERATIONS || System.nanoTime() < deadline) {
+            op.run();
+            iterations++;
+        }
+        return iterations;
+    }
+
+    private static KeyPair sampleKeyPair(final String signatureAlgorithm) throws GeneralSecurityException {
+        final String keyAlgorithm = keyAlgorithm(signatureAlgorithm);
+        try {
+            return SAMPLE_KEYS.computeIfAbsent(keyAlgorithm, k -> {
+                try {
+                    final KeyPairGenerator generator = KeyPairGenerator.getInstance(k);
+                    generator.initialize(defaultKeySize(k), SecureRandomUtils.get());
+                    return generator.generateKeyPair();
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static String keyAlgorithm(final String signatureAlgorithm) {
+        final String upper = signatureAlgorithm.toUpperCase(Locale.ROOT);
+        final int with = upper.indexOf("WITH");
+        final String suffix = with < 0 ? upper : upper.substring(with + 4);
+        if (suffix.startsWith("ECDSA")) {
+            return "EC";
+        } else if (suffix.startsWith("RSA")) {
+            return "RSA";
+        } else if (suffix.startsWith("DSA")) {
+            return "DSA";
+        }
+        throw new IllegalArgumentException("unknown key algorithm for " + signatureAlgorithm);
+    }
+
+    private static int defaultKeySize(final String keyAlgorithm) {
+        switch (keyAlgorithm.toUpperCase(Locale.ROOT)) {
+            case "RSA":
+            case "DSA":
+                return 2048;
+            case "EC":
+                return 256;
+            default:
+                return 0;
+        }
+    }
+
+    private static final class Selection {
+        private final Provider provider;
+        private final boolean warmedUp;
+
+        private Selection(final Provider provider, final boolean warmedUp) {
+            this.provider = provider;
+            this.warmedUp = warmedUp;
+        }
+    }
+
+    @FunctionalInterface
+    private interface BenchmarkOperation {
+        void run() throws GeneralSecurityException;
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.dbstarll.certs;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.certs.model.Subject;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.operator.OperatorCreationException;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 测试用的密钥、主体与证书.
+ */
+public final class CertificateFixtures {
+    /**
+     * 根证书的主体.
+     */
+    public static final Subject ROOT = Subject.from(new X500Name("C=CN,O=上海云屹信息技术有限公司,OU=ROOT,CN=云屹根证书-ROOT"));
+    /**
+     * 终端实体证书的主体.
+     */
+    public static final Subject LEAF = Subject.from(new X500Name("C=CN,O=上海云屹信息技术有限公司,OU=LEAF,CN=云屹-LEAF"));
+
+    private CertificateFixtures() {
+        // 禁止实例化
+    }
+
+    /**
+     * 生成密钥对.
+     *
+     * @param algorithm 密钥算法, 如RSA、EC
+     * @param keySize   密钥长度
+     * @return 密钥对
+     * @throws NoSuchAlgorithmException 算法不支持时抛出
+     */
+    public static KeyPair keyPair(final String algorithm, final int keySize) throws NoSuchAlgorithmException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        generator.initialize(keySize);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * 为密钥对生成证书签发申请, 再以同一私钥签发证书, 每次调用都得到序列号不同的新证书.
+     *
+     * @param keyPair            密钥对
+     * @param subject            主体
+     * @param issuer             签发者名称
+     * @param sanNames           SAN, 可以为null
+     * @param signatureAlgorithm 签名算法
+     * @return 证书
+     * @throws IOException               io exception
+     * @throws OperatorCreationException OperatorCreationException
+     */
+    public static Certificate certificate(final KeyPair keyPair, final Subject subject, final Subject issuer,
+                                          final GeneralNames sanNames, final SignatureAlgorithm signatureAlgorithm)
+            throws IOException, OperatorCreationException {
+        final CertificateSigningRequest csr = CertificateSigningRequest.generate(keyPair, subject, sanNames,
+                signatureAlgorithm);
+        return Certificate.generate(csr, issuer, keyPair.getPrivate(), signatureAlgorithm);
+    }
+
+    /**
+     * 构建自签名的CA.
+     *
+     * @param name               name of ca
+     * @param keyPair            密钥对
+     * @param subject            主体
+     * @param sanNames           SAN, 可以为null
+     * @param signatureAlgorithm 签名算法
+     * @return CertificationAuthority
+     * @throws IOException               io exception
+     * @throws OperatorCreationException OperatorCreationException
+     */
+    public static CertificationAuthority authority(final String name, final KeyPair keyPair, final Subject subject,
+                                                   final GeneralNames sanNames,
+                                                   final SignatureAlgorithm signatureAlgorithm)
+            throws IOException, OperatorCreationException {
+        final CertificateSigningRequest csr = CertificateSigningRequest.generate(keyPair, subject, sanNames,
+                signatureAlgorithm);
+        final Certificate crt = Certificate.generate(csr, subject, keyPair.getPrivate(), signatureAlgorithm);
+        return new CertificationAuthority(name, keyPair, subject, csr, crt, null);
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.dbstarll.certs.audit;
+
+import io.github.dbstarll.certs.CertificateFixtures;
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试AuditScanner.
+ */
+public class AuditScannerTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void scan() throws Exception {
+        final KeyPair keyPair = CertificateFixtures.keyPair("RSA", 1024);
+        final CertificateSigningRequest csr = CertificateSigningRequest.generate(
+                keyPair, CertificateFixtures.LEAF, null, SignatureAlgorithm.SHA1withRSA);
+        final Certificate crt = CertificateFixtures.certificate(keyPair, CertificateFixtures.LEAF,
+                CertificateFixtures.ROOT, null, SignatureAlgorithm.SHA256withRSA);
+
+        Files.createDirectories(root.resolve("a/b"));
+        try (Writer writer = Files.newBufferedWriter(root.resolve("a/LEAF.csr"))) {
+            csr.writePEM(writer, null);
+        }
+        try (Writer writer = Files.newBufferedWriter(root.resolve("a/b/LEAF.cer"))) {
+            crt.writePEM(writer, null);
+        }
+        Files.write(root.resolve("a/b/LEAF.der"), crt.getEncoded());
+        // 申请CA证书的证书签发申请不要求SAN
+        final ExtensionsGenerator extensions = new ExtensionsGenerator();
+        extensions.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        final PKCS10CertificationRequest caCsr = new JcaPKCS10CertificationRequestBuilder(
+                crt.getIssuer(), keyPair.getPublic())
+                .addAttribute(PKCSObjectIdentifiers.pkcs_9_at_extensionRequest, extensions.generate())
+                .build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate()));
+        Files.write(root.resolve("a/ROOT.csr"), caCsr.getEncoded());
+        Files.write(root.resolve("README"), "not a certificate".getBytes(StandardCharsets.US_ASCII));
+        // DER编码的PKCS#8私钥与PEM编码的PKCS#1私钥
+        Files.write(root.resolve("a/LEAF.key"), keyPair.getPrivate().getEncoded());
+        try (Writer writer = Files.newBufferedWriter(root.resolve("a/b/LEAF.pem"))) {
+            try (JcaPEMWriter pem = new JcaPEMWriter(writer)) {
+                pem.writeObject(keyPair);
+            }
+        }
+        // 指向上级目录的符号链接不跟随
+        Files.createSymbolicLink(root.resolve("a/b/loop"), root);
+
+        final StringWriter out = new StringWriter();
+        final AuditScanner scanner = new AuditScanner(out, 400, 4);
+        scanner.scan(root);
+        scanner.finish();
+
+        assertEquals(7, scanner.getFileCount());
+        assertEquals(6, scanner.getObjectCount());
+        final List<String> lines = Arrays.asList(out.toString().split("\n"));
+        assertEquals(scanner.getFindingCount(), lines.size());
+        assertEquals(6, count(lines, "\"check\":\"WEAK_KEY\""));
+        assertEquals(2, count(lines, "\"key\",\"check\":\"WEAK_KEY\",\"detail\":\"RSA 1024\""));
+        assertEquals(0, count(lines, "\"check\":\"UNREADABLE\""));
+        assertEquals(1, count(lines, "\"csr\",\"check\":\"SHA1_SIGNATURE\""));
+        assertEquals(2, count(lines, "\"check\":\"EXPIRING_SOON\""));
+        assertEquals(3, count(lines, "\"check\":\"MISSING_SAN\""));
+        assertEquals(1, count(lines, "\"check\":\"BROKEN_CHAIN\""));
+        assertTrue(lines.stream().allMatch(l -> l.startsWith("{\"path\":\"") && l.endsWith("}")));
+    }
+
+    @Test
+    void largeFiles() throws Exception {
+        final Certificate crt = CertificateFixtures.certificate(CertificateFixtures.keyPair("RSA", 2048),
+                CertificateFixtures.LEAF, CertificateFixtures.ROOT,
+                new GeneralNames(new GeneralName(GeneralName.dNSName, "www.example.com")),
+                SignatureAlgorithm.SHA256withRSA);
+
+        // 超过1MB的证书流文件
+        final StringWriter pem = new StringWriter();
+        crt.writePEM(pem, null);
+        try (Writer writer = Files.newBufferedWriter(root.resolve("bundle.pem"), StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < 1024; i++) {
+                writer.write(pem.toString());
+            }
+        }
+        assertTrue(Files.size(root.resolve("bundle.pem")) > 1024 * 1024);
+        final byte[] der = new byte[1024 * 1024 + 1];
+        der[0] = 0x30;
+        Files.write(root.resolve("huge.der"), der);
+
+        final StringWriter out = new StringWriter();
+        final AuditScanner scanner = new AuditScanner(out, 0, 2);
+        scanner.scan(root);
+        scanner.finish();
+
+        assertEquals(2, scanner.getFileCount());
+        assertEquals(1024, scanner.getObjectCount());
+        final List<String> lines = Arrays.asList(out.toString().split("\n"));
+        assertEquals(2, lines.size(), lines.toString());
+        assertEquals(1, count(lines, "\"check\":\"UNREADABLE\",\"detail\":\"DER file too large"));
+        assertEquals(1, count(lines, "issued 1024 certificates"));
+    }
+
+    private static long count(final List<String> lines, final String fragment) {
+        return lines.stream().filter(l -> l.contains(fragment)).count();
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.dbstarll.certs.bundle;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.certs.registry.CertificationAuthorityRegistry;
+import io.github.dbstarll.certs.utils.CertificationAuthorityUtils;
+import org.bouncycastle.cms.CMSSignedData;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 测试ChainBundleServer.
+ */
+public class ChainBundleServerTest {
+    @Test
+    void serve() throws Exception {
+        final CertificationAuthority root = CertificationAuthorityUtils.buildOne("ROOT", null, null, 2048);
+        final CertificationAuthority server = CertificationAuthorityUtils.buildOne("SERVER", root, 0, 2048);
+        final CertificationAuthorityRegistry registry = new CertificationAuthorityRegistry();
+        registry.register(Arrays.asList(root, server));
+        final ChainBundleService service = new ChainBundleService(registry);
+
+        try (ChainBundleServer httpd = new ChainBundleServer(service,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2)) {
+            final String base = "http://localhost:" + httpd.getAddress().getPort() + "/ca/";
+
+            HttpURLConnection conn = open(base + "SERVER-chain.pem", null);
+            assertEquals(200, conn.getResponseCode());
+            assertEquals("application/pem-certificate-chain", conn.getContentType());
+            final String etag = conn.getHeaderField("ETag");
+            final String pem = new String(read(conn), StandardCharsets.US_ASCII);
+            assertEquals(2, pem.split("-----BEGIN CERTIFICATE-----").length - 1);
+
+            assertEquals(304, open(base + "SERVER-chain.pem", etag).getResponseCode());
+            assertEquals(404, open(base + "UNKNOWN.cer", null).getResponseCode());
+
+            conn = open(base + "ROOT.cer", null);
+            assertEquals(200, conn.getResponseCode());
+            assertEquals(root.getCrt(), Certificate.decode(read(conn)));
+
+            conn = open(base + "SERVER-chain.p7c", null);
+            assertEquals(2, new CMSSignedData(read(conn)).getCertificates().getMatches(null).size());
+
+            // 未变化的CA复用已编码的结果, 续期后重新构建
+            final ChainBundle rootCer = service.get("ROOT.cer");
+            registry.register(Collections.singleton(
+                    CertificationAuthorityUtils.buildOne("SERVER", root, 0, 2048)));
+            assertSame(rootCer, service.get("ROOT.cer"));
+            conn = open(base + "SERVER-chain.pem", etag);
+            assertEquals(200, conn.getResponseCode());
+            assertNotEquals(etag, conn.getHeaderField("ETag"));
+        }
+    }
+
+    private static HttpURLConnection open(final String url, final String etag) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        if (etag != null) {
+            conn.setRequestProperty("If-None-Match", etag);
+        }
+        return conn;
+    }
+
+    private static byte[] read(final HttpURLConnection conn) throws IOException {
+        try (InputStream in = conn.getInputStream()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.dbstarll.certs.bundle;
+
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.certs.registry.CertificationAuthorityRegistry;
+import io.github.dbstarll.certs.utils.CertificationAuthorityUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 测试ChainBundleService.
+ */
+public class ChainBundleServiceTest {
+    @Test
+    void skipBroken() throws Exception {
+        final CertificationAuthority root = CertificationAuthorityUtils.buildOne("ROOT", null, null, 2048);
+        final CertificationAuthority server = CertificationAuthorityUtils.buildOne("SERVER", root, 0, 2048);
+        // 没有证书的CA
+        final CertificationAuthority pending = new CertificationAuthority("PENDING", null, null, null, null);
+
+        final CertificationAuthorityRegistry registry = new CertificationAuthorityRegistry();
+        registry.register(Arrays.asList(root, server, pending));
+        final ChainBundleService service = new ChainBundleService(registry);
+        assertNull(service.get("PENDING.cer"));
+        final ChainBundle rootCer = service.get("ROOT.cer");
+        final ChainBundle serverChain = service.get("SERVER-chain.pem");
+        assertNotNull(serverChain);
+
+        // 签发者没有证书, 无法构建证书链: 沿用上一版的结果, 不在每次查询时重建
+        registry.register(Collections.singleton(server.withIssuer(pending)));
+        assertSame(serverChain, service.get("SERVER-chain.pem"));
+        assertSame(serverChain, service.get("SERVER-chain.pem"));
+        assertSame(rootCer, service.get("ROOT.cer"));
+    }
+}
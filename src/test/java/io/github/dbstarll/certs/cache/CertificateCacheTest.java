@@ -0,0 +1,85 @@
+package io.github.dbstarll.certs.cache;
+
+import io.github.dbstarll.certs.CertificateFixtures;
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试CertificateCache.
+ */
+public class CertificateCacheTest {
+    @Test
+    void segmentedLru() throws Exception {
+        final KeyPair keyPair = CertificateFixtures.keyPair("EC", 256);
+        final Certificate[] certificates = new Certificate[40];
+        for (int i = 0; i < certificates.length; i++) {
+            certificates[i] = CertificateFixtures.certificate(keyPair, CertificateFixtures.LEAF,
+                    CertificateFixtures.LEAF, null, SignatureAlgorithm.SHA256withECDSA);
+        }
+        final int size = certificates[0].getEncoded().length;
+        final CertificateCache cache = new CertificateCache(size * 10L + size / 2, 1);
+
+        // 中间证书反复使用, 晋升到保护区
+        final byte[] hot = certificates[0].getEncoded();
+        final Certificate decoded = cache.decode(hot);
+        assertSame(decoded, cache.decode(hot));
+        final StringWriter pem = new StringWriter();
+        decoded.writePEM(pem, null);
+        assertSame(decoded, cache.decodePEM(new StringReader(pem.toString())));
+
+        // 一次性扫描不会淘汰保护区中的证书
+        for (int i = 1; i < certificates.length; i++) {
+            cache.put(certificates[i]);
+        }
+        assertTrue(cache.getWeightedSize() <= size * 10L + size / 2);
+        assertEquals(10, cache.size());
+        assertEquals(30, cache.getEvictionCount());
+        assertTrue(cache.getEvictedBytes() >= 30L * (size - 2));
+        assertSame(decoded, cache.getByFingerprint(MessageDigest.getInstance("SHA-256").digest(hot)));
+        assertSame(decoded, cache.getBySerial(decoded.getIssuer(), decoded.getSerialNumber()));
+        assertNull(cache.getBySerial(certificates[1].getIssuer(), certificates[1].getSerialNumber()));
+        assertNotNull(cache.getBySerial(certificates[39].getIssuer(), certificates[39].getSerialNumber()));
+
+        assertEquals(5, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(5 / 7.0, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void segments() throws Exception {
+        final KeyPair keyPair = CertificateFixtures.keyPair("EC", 256);
+        final Certificate[] certificates = new Certificate[40];
+        for (int i = 0; i < certificates.length; i++) {
+            certificates[i] = CertificateFixtures.certificate(keyPair, CertificateFixtures.LEAF,
+                    CertificateFixtures.LEAF, null, SignatureAlgorithm.SHA256withECDSA);
+        }
+        final int size = certificates[0].getEncoded().length;
+
+        final CertificateCache cache = new CertificateCache(size * 1000L, 16);
+        for (Certificate certificate : certificates) {
+            cache.put(certificate);
+        }
+        assertEquals(certificates.length, cache.size());
+        for (Certificate certificate : certificates) {
+            assertSame(certificate, cache.getBySerial(certificate.getIssuer(), certificate.getSerialNumber()));
+        }
+
+        // 单段容量小于证书大小时不缓存, 但计入统计
+        final CertificateCache small = new CertificateCache(size * 2L, 4);
+        assertSame(certificates[0], small.put(certificates[0]));
+        assertEquals(0, small.size());
+        assertEquals(1, small.getOversizedCount());
+    }
+}
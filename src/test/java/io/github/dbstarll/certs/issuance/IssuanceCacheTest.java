@@ -0,0 +1,118 @@
+package io.github.dbstarll.certs.issuance;
+
+import io.github.dbstarll.certs.CertificateFixtures;
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 测试IssuanceCache.
+ */
+public class IssuanceCacheTest {
+    @Test
+    void issue() throws Exception {
+        final KeyPair keyPair = CertificateFixtures.keyPair("RSA", 2048);
+        final CertificationAuthority ca = CertificateFixtures.authority("ROOT", keyPair, CertificateFixtures.ROOT,
+                null, SignatureAlgorithm.SHA256withRSA);
+        final CertificateSigningRequest csr = CertificateSigningRequest.generate(
+                keyPair, CertificateFixtures.LEAF, null, SignatureAlgorithm.SHA256withRSA);
+
+        final AtomicInteger signed = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final IssuanceCache cache = new IssuanceCache((r, i, a) -> {
+            signed.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return CertificateIssuer.DIRECT.issue(r, i, a);
+        }, 10, 60_000);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Certificate>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.issue(csr, ca, SignatureAlgorithm.SHA256withRSA)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            final Certificate first = futures.get(0).get();
+            for (Future<Certificate> future : futures) {
+                assertSame(first, future.get());
+            }
+            assertEquals(1, signed.get());
+            assertSame(first, cache.issue(csr, ca, SignatureAlgorithm.SHA256withRSA));
+
+            assertNotEquals(first, cache.issue(csr, ca, SignatureAlgorithm.SHA512withRSA));
+            assertEquals(2, signed.get());
+            assertEquals(2, cache.getMissCount());
+            assertEquals(8, cache.getHitCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void keepInFlight() throws Exception {
+        final KeyPair keyPair = CertificateFixtures.keyPair("RSA", 2048);
+        final CertificationAuthority ca = CertificateFixtures.authority("ROOT", keyPair, CertificateFixtures.ROOT,
+                null, SignatureAlgorithm.SHA256withRSA);
+        final CertificateSigningRequest csr = CertificateSigningRequest.generate(
+                keyPair, CertificateFixtures.LEAF, null, SignatureAlgorithm.SHA256withRSA);
+
+        final AtomicInteger signed = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final IssuanceCache cache = new IssuanceCache((r, i, a) -> {
+            signed.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return CertificateIssuer.DIRECT.issue(r, i, a);
+        }, 1, 60_000);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // 两个进行中的签名已超出容量, 都不能被淘汰
+            final Future<Certificate> first = executor.submit(
+                    () -> cache.issue(csr, ca, SignatureAlgorithm.SHA256withRSA));
+            final Future<Certificate> other = executor.submit(
+                    () -> cache.issue(csr, ca, SignatureAlgorithm.SHA512withRSA));
+            while (signed.get() < 2) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, cache.size());
+            final Future<Certificate> duplicate = executor.submit(
+                    () -> cache.issue(csr, ca, SignatureAlgorithm.SHA256withRSA));
+            Thread.sleep(100);
+            release.countDown();
+            assertSame(first.get(), duplicate.get());
+            assertNotEquals(first.get(), other.get());
+            assertEquals(2, signed.get());
+            assertEquals(1, cache.getHitCount());
+
+            // 完成后的条目在下一次签发时按容量淘汰
+            cache.issue(csr, ca, SignatureAlgorithm.SHA384withRSA);
+            assertEquals(1, cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
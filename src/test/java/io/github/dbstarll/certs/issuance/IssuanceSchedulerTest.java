@@ -0,0 +1,108 @@
+package io.github.dbstarll.certs.issuance;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试IssuanceScheduler.
+ */
+public class IssuanceSchedulerTest {
+    @Test
+    void fairness() throws Exception {
+        final CertificateSigningRequest csr = csr();
+        final CertificationAuthority big = new CertificationAuthority("BIG", null, null, null, null);
+        final CertificationAuthority small = new CertificationAuthority("SMALL", null, null, null, null);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        try (IssuanceScheduler scheduler = new IssuanceScheduler((r, i, a) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            order.add(i.getName());
+            return null;
+        }, 1)) {
+            final List<CompletableFuture<Certificate>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(scheduler.submit("BIG", csr, big, SignatureAlgorithm.SHA256withRSA));
+            }
+            for (int i = 0; i < 4; i++) {
+                futures.add(scheduler.submit("SMALL", csr, small, SignatureAlgorithm.SHA256withRSA));
+            }
+            release.countDown();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+            assertEquals(24, order.size());
+            assertTrue(order.lastIndexOf("SMALL") < 10, order.toString());
+
+            final Map<String, TenantStats> stats = scheduler.stats();
+            assertEquals(20, stats.get("BIG").getCompleted());
+            assertEquals(4, stats.get("SMALL").getCompleted());
+            assertEquals(0, stats.get("SMALL").getQueued());
+        }
+    }
+
+    @Test
+    void throttled() throws Exception {
+        final CertificateSigningRequest csr = csr();
+        final CertificationAuthority ca = new CertificationAuthority("CA", null, null, null, null);
+        try (IssuanceScheduler scheduler = new IssuanceScheduler((r, i, a) -> null, 1)) {
+            scheduler.configure("LIMITED", 1, 5, 1);
+            final List<CompletableFuture<Certificate>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(scheduler.submit("LIMITED", csr, ca, SignatureAlgorithm.SHA256withRSA));
+            }
+            // 其他租户的请求不断唤醒签名线程, 不应重复计数被限流的请求
+            for (int i = 0; i < 50; i++) {
+                futures.add(scheduler.submit("FREE", csr, ca, SignatureAlgorithm.SHA256withRSA));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+            final Map<String, TenantStats> stats = scheduler.stats();
+            assertEquals(3, stats.get("LIMITED").getCompleted());
+            assertEquals(2, stats.get("LIMITED").getThrottled());
+            assertEquals(0, stats.get("FREE").getThrottled());
+        }
+    }
+
+    @Test
+    void idleTenantsEvicted() throws Exception {
+        final CertificateSigningRequest csr = csr();
+        final CertificationAuthority ca = new CertificationAuthority("CA", null, null, null, null);
+        try (IssuanceScheduler scheduler = new IssuanceScheduler((r, i, a) -> null, 1)) {
+            scheduler.configure("CONFIGURED", 1, Double.POSITIVE_INFINITY, 1);
+            for (int i = 0; i < 3000; i++) {
+                scheduler.submit("TENANT-" + i, csr, ca, SignatureAlgorithm.SHA256withRSA).get();
+            }
+            final Map<String, TenantStats> stats = scheduler.stats();
+            assertTrue(stats.size() <= 1024, Integer.toString(stats.size()));
+            assertTrue(stats.containsKey("CONFIGURED"));
+        }
+    }
+
+    private static CertificateSigningRequest csr() throws Exception {
+        try (InputStream is = ClassLoader.getSystemResourceAsStream("ROOT.csr")) {
+            try (Reader reader = new InputStreamReader(is)) {
+                return CertificateSigningRequest.readPEM(reader);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.dbstarll.certs.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按间隔取出延迟直方图的记录器, 换入新的直方图时不丢失并发记录的值.
+ *
+ * <p>采用HDR Histogram中Recorder的写者-读者相位切换: 写者在记录前后各做一次原子自增, 不加锁;
+ * 读者换入新的直方图后翻转相位, 等待所有仍可能持有旧直方图的写者退出, 再返回旧直方图.</p>
+ */
+final class IntervalRecorder {
+    private final AtomicLong startEpoch = new AtomicLong();
+    private final AtomicLong evenEndEpoch = new AtomicLong();
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+    private volatile LatencyHistogram active = new LatencyHistogram();
+
+    /**
+     * 记录一个值.
+     *
+     * @param value 值, 通常为纳秒
+     */
+    void record(final long value) {
+        final long epoch = startEpoch.getAndIncrement();
+        try {
+            active.record(value);
+        } finally {
+            (epoch < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+        }
+    }
+
+    /**
+     * 取出上次调用以来记录的所有值, 并开始新的间隔.
+     *
+     * @return 上一间隔的直方图
+     */
+    synchronized LatencyHistogram getIntervalHistogram() {
+        final LatencyHistogram last = active;
+        active = new LatencyHistogram();
+
+        final boolean nextPhaseIsEven = startEpoch.get() < 0;
+        final long initialEpoch = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        (nextPhaseIsEven ? evenEndEpoch : oddEndEpoch).set(initialEpoch);
+        final long startEpochAtFlip = startEpoch.getAndSet(initialEpoch);
+        final AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousEndEpoch.get() != startEpochAtFlip) {
+            Thread.yield();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.dbstarll.certs.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.commons.lang3.Validate.inclusiveBetween;
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 线程安全的延迟直方图, 按HDR Histogram的对数-线性方式分桶.
+ *
+ * <p>小于256的值精确记录, 更大的值在每个2的幂区间内再均分为128个子桶, 相对误差不超过1/128;
+ * 占用固定内存, 记录时只做一次原子自增.</p>
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_LIMIT = SUB_BUCKET_COUNT << 1;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值.
+     *
+     * @param value 值, 通常为纳秒
+     */
+    public void record(final long value) {
+        isTrue(value >= 0, "value must be non-negative: %d", value);
+        counts.incrementAndGet(index(value));
+        total.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * 将另一个直方图的记录合并到本直方图.
+     *
+     * @param other 另一个直方图
+     */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        final long otherMax = other.max.get();
+        long current = max.get();
+        while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * get count of recorded values.
+     *
+     * @return count of recorded values
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * get max recorded value.
+     *
+     * @return max recorded value
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * get mean of recorded values.
+     *
+     * @return mean of recorded values
+     */
+    public double getMean() {
+        final long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * 获得指定百分位上的值, 返回所在桶的上界(不超过最大值).
+     *
+     * @param percentile 百分位, 取值0到100
+     * @return 百分位上的值, 没有记录时返回0
+     */
+    public long getValueAtPercentile(final double percentile) {
+        inclusiveBetween(0.0, 100.0, percentile, "percentile must between 0 and 100: %s", percentile);
+        long remaining = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            remaining += counts.get(i);
+        }
+        if (remaining == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * remaining));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int index(final long value) {
+        if (value < EXACT_LIMIT) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    static long highestEquivalentValue(final int index) {
+        if (index < EXACT_LIMIT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        final long upper = ((subBucket + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
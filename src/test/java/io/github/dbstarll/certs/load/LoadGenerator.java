@@ -0,0 +1,277 @@
+package io.github.dbstarll.certs.load;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.certs.model.Subject;
+import io.github.dbstarll.certs.utils.CryptoProviders;
+import io.github.dbstarll.certs.utils.SecureRandomUtils;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+/**
+ * 端到端签发压测工具.
+ *
+ * <p>每个请求完整执行CertificateSigningRequest.generate、Certificate.generate和writePEM,
+ * 不依赖任何外部服务. 订户密钥预先生成并轮流使用, 因此结果不包含密钥生成的耗时.
+ * 闭环模式下N个客户端各自串行发出请求; 开环模式下按固定速率调度, 延迟从计划发出时刻算起,
+ * 以避免协调遗漏(coordinated omission). 运行期间按间隔输出吞吐和延迟, 结束时输出延迟分布.</p>
+ *
+ * <p>压测工具随测试代码编译, 不进入发布的jar, 通过mvn -Pload verify -Dload.args="..."运行.</p>
+ */
+public final class LoadGenerator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LoadOptions options;
+    private final PrintStream out;
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final IntervalRecorder interval = new IntervalRecorder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder pemChars = new LongAdder();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private CertificationAuthority issuer;
+    private KeyPair[] subscriberKeys;
+    private SignatureAlgorithm signatureAlgorithm;
+
+    /**
+     * 构建压测工具.
+     *
+     * @param options 压测参数
+     * @param out     报告输出
+     */
+    public LoadGenerator(final LoadOptions options, final PrintStream out) {
+        this.options = notNull(options, "options is null");
+        this.out = notNull(out, "out is null");
+        options.validate();
+    }
+
+    /**
+     * 执行压测并输出报告.
+     *
+     * @return 全程的延迟直方图(纳秒)
+     * @throws Exception 任何异常都抛出
+     */
+    public LatencyHistogram run() throws Exception {
+        prepare();
+        out.println("load: " + options);
+
+        final ExecutorService executor = newExecutor();
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+        final Thread reporter = new Thread(() -> report(start, end), "load-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+        try {
+            if (options.getMode() == LoadOptions.Mode.CLOSED) {
+                closedLoop(executor, end);
+            } else {
+                openLoop(executor, start, end);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            reporter.interrupt();
+            reporter.join();
+        }
+        summary(System.nanoTime() - start);
+        return total;
+    }
+
+    /**
+     * get count of failed requests.
+     *
+     * @return count of failed requests
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    private void prepare() throws Exception {
+        signatureAlgorithm = SignatureAlgorithm.valueOf(options.getDigest() + "with"
+                + ("EC".equals(options.getKeyAlgorithm()) ? "ECDSA" : options.getKeyAlgorithm()));
+        CryptoProviders.warmUp(CryptoProviders.Operation.KEY_GENERATION, options.getKeyAlgorithm());
+        CryptoProviders.warmUp(CryptoProviders.Operation.SIGNING, signatureAlgorithm.name());
+
+        CertificationAuthority ca = null;
+        for (int level = 0; level < options.getCaDepth(); level++) {
+            final String name = level == 0 ? "ROOT" : "SUB" + level;
+            final KeyPair keyPair = generateKeyPair();
+            final Subject subject = Subject.from(new X500Name("C=CN,O=certs-load,OU=" + name + ",CN=load-" + name));
+            final CertificateSigningRequest csr = CertificateSigningRequest.generate(keyPair, subject, null,
+                    signatureAlgorithm);
+            final Certificate crt = ca == null
+                    ? Certificate.generate(csr, subject, keyPair.getPrivate(), signatureAlgorithm)
+                    : Certificate.generate(csr, ca, signatureAlgorithm);
+            ca = new CertificationAuthority(name, keyPair, subject, csr, crt, ca);
+        }
+        issuer = ca;
+
+        subscriberKeys = new KeyPair[options.getKeyPoolSize()];
+        for (int i = 0; i < subscriberKeys.length; i++) {
+            subscriberKeys[i] = generateKeyPair();
+        }
+    }
+
+    private KeyPair generateKeyPair() throws GeneralSecurityException {
+        final String algorithm = options.getKeyAlgorithm();
+        final Provider provider = CryptoProviders.keyGeneration(algorithm);
+        final KeyPairGenerator generator = provider == null ? KeyPairGenerator.getInstance(algorithm)
+                : KeyPairGenerator.getInstance(algorithm, provider);
+        generator.initialize(options.getKeySize(), SecureRandomUtils.get());
+        return generator.generateKeyPair();
+    }
+
+    private ExecutorService newExecutor() {
+        if (options.isVirtualThreads()) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("virtual threads are not supported by java "
+                        + System.getProperty("java.version"), e);
+            }
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadFactory factory = r -> {
+            final Thread thread = new Thread(r, "load-client-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(options.getClients(), factory);
+    }
+
+    private void closedLoop(final ExecutorService executor, final long end) throws Exception {
+        final List<Future<?>> clients = new ArrayList<>(options.getClients());
+        for (int i = 0; i < options.getClients(); i++) {
+            clients.add(executor.submit(() -> {
+                long now = System.nanoTime();
+                while (now < end) {
+                    issue(now);
+                    now = System.nanoTime();
+                }
+            }));
+        }
+        for (Future<?> client : clients) {
+            client.get();
+        }
+    }
+
+    private void openLoop(final ExecutorService executor, final long start, final long end) {
+        final long period = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        for (long i = 0; ; i++) {
+            final long intended = start + i * period;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            while (wait > 0) {
+                LockSupport.parkNanos(wait);
+                wait = intended - System.nanoTime();
+            }
+            executor.execute(() -> issue(intended));
+        }
+    }
+
+    private void issue(final long intended) {
+        final long id = sequence.getAndIncrement();
+        try {
+            final KeyPair keyPair = subscriberKeys[(int) (id % subscriberKeys.length)];
+            final Subject subject = Subject.from(new X500Name("C=CN,O=certs-load,CN=load-" + id));
+            final CertificateSigningRequest csr = CertificateSigningRequest.generate(keyPair, subject, null,
+                    signatureAlgorithm);
+            final Certificate crt = Certificate.generate(csr, issuer, signatureAlgorithm);
+            final StringWriter writer = new StringWriter();
+            crt.writePEM(writer, null);
+            pemChars.add(writer.getBuffer().length());
+
+            final long latency = System.nanoTime() - intended;
+            total.record(latency);
+            interval.record(latency);
+        } catch (Exception e) {
+            failed.increment();
+            LOGGER.debug("issuance {} failed", id, e);
+        }
+    }
+
+    private void report(final long start, final long end) {
+        final long step = TimeUnit.SECONDS.toNanos(options.getReportIntervalSeconds());
+        long next = start + step;
+        while (next <= end + step && !Thread.currentThread().isInterrupted()) {
+            long wait = next - System.nanoTime();
+            while (wait > 0 && !Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(wait);
+                wait = next - System.nanoTime();
+            }
+            final LatencyHistogram last = interval.getIntervalHistogram();
+            out.println(String.format(Locale.ROOT, "[%5ds] %8.1f req/s  p50=%.2fms  p99=%.2fms  max=%.2fms",
+                    TimeUnit.NANOSECONDS.toSeconds(next - start), (double) last.getCount() / options
+                            .getReportIntervalSeconds(), millis(last.getValueAtPercentile(50)),
+                    millis(last.getValueAtPercentile(99)), millis(last.getMax())));
+            next += step;
+        }
+    }
+
+    private void summary(final long elapsedNanos) {
+        final double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        out.println(String.format(Locale.ROOT, "completed=%d failed=%d elapsed=%.1fs throughput=%.1f req/s"
+                        + " pem=%d chars", total.getCount(), failed.sum(), seconds, total.getCount() / seconds,
+                pemChars.sum()));
+        out.println(String.format(Locale.ROOT, "latency(ms): mean=%.2f max=%.2f", millis(total.getMean()),
+                millis(total.getMax())));
+        for (double percentile : PERCENTILES) {
+            out.println(String.format(Locale.ROOT, "  p%-6s %10.2f", format(percentile),
+                    millis(total.getValueAtPercentile(percentile))));
+        }
+    }
+
+    private static String format(final double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private static double millis(final double nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * 主程序入口, 有请求失败时抛出异常, 以便exec:java在不退出Maven进程的前提下使构建失败.
+     *
+     * @param args 入参, 见{@link LoadOptions#parse(String[])}
+     * @throws Exception 任何异常都抛出
+     */
+    public static void main(final String[] args) throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final LoadGenerator generator = new LoadGenerator(LoadOptions.parse(args), System.out);
+        generator.run();
+        if (generator.getFailed() > 0) {
+            throw new IllegalStateException(generator.getFailed() + " requests failed");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.dbstarll.certs.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试LoadGenerator.
+ */
+public class LoadGeneratorTest {
+    @Test
+    void closedLoop() throws Exception {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final LoadGenerator generator = new LoadGenerator(LoadOptions.parse(new String[]{
+                "--mode=closed", "--clients=2", "--duration=1", "--key=EC", "--key-size=256", "--ca-depth=3"}),
+                new PrintStream(buffer, true, "UTF-8"));
+        final LatencyHistogram histogram = generator.run();
+
+        assertTrue(histogram.getCount() > 0);
+        assertEquals(0, generator.getFailed());
+        final String report = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(report.contains("req/s"), report);
+        assertTrue(report.contains("p99.9"), report);
+    }
+
+    @Test
+    void openLoop() throws Exception {
+        final LoadOptions options = new LoadOptions();
+        options.setMode(LoadOptions.Mode.OPEN);
+        options.setRate(50);
+        options.setDurationSeconds(1);
+        options.setKeyAlgorithm("ec");
+        options.setKeySize(256);
+        final LoadGenerator generator = new LoadGenerator(options, new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(50, generator.run().getCount());
+        assertEquals(0, generator.getFailed());
+    }
+
+    @Test
+    void intervalRecorder() throws Exception {
+        final IntervalRecorder recorder = new IntervalRecorder();
+        final Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    recorder.record(j);
+                }
+            });
+            writers[i].start();
+        }
+        long count = 0;
+        while (writers[0].isAlive() || writers[1].isAlive() || writers[2].isAlive() || writers[3].isAlive()) {
+            count += recorder.getIntervalHistogram().getCount();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        count += recorder.getIntervalHistogram().getCount();
+        assertEquals(400000, count);
+    }
+
+    @Test
+    void histogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(5000000, histogram.getValueAtPercentile(50), 5000000 / 128.0);
+        assertEquals(9900000, histogram.getValueAtPercentile(99), 9900000 / 128.0);
+        assertEquals(10000000, histogram.getValueAtPercentile(100));
+        for (long v : new long[]{0, 255, 256, 1000, Long.MAX_VALUE}) {
+            assertTrue(LatencyHistogram.highestEquivalentValue(LatencyHistogram.index(v)) >= v);
+        }
+        assertThrows(IllegalArgumentException.class, () -> LoadOptions.parse(new String[]{"--unknown=1"}));
+    }
+}
@@ -0,0 +1,306 @@
+package io.github.dbstarll.certs.load;
+
+import java.util.Locale;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+/**
+ * 压测参数.
+ */
+public final class LoadOptions {
+    /**
+     * 施压模式.
+     */
+    public enum Mode {
+        /**
+         * 闭环: 每个客户端在上一个请求完成后立即发出下一个请求.
+         */
+        CLOSED,
+        /**
+         * 开环: 按固定速率发出请求, 延迟从计划发出时刻算起, 包含排队时间.
+         */
+        OPEN
+    }
+
+    private Mode mode = Mode.CLOSED;
+    private int clients = Runtime.getRuntime().availableProcessors();
+    private int rate = 100;
+    private int durationSeconds = 10;
+    private int reportIntervalSeconds = 1;
+    private boolean virtualThreads;
+    private String keyAlgorithm = "RSA";
+    private int keySize = 2048;
+    private String digest = "SHA256";
+    private int caDepth = 2;
+    private int keyPoolSize = 16;
+
+    /**
+     * get mode.
+     *
+     * @return mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * set mode.
+     *
+     * @param mode mode
+     */
+    public void setMode(final Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * get number of concurrent clients, 开环模式下为平台线程池大小.
+     *
+     * @return number of concurrent clients
+     */
+    public int getClients() {
+        return clients;
+    }
+
+    /**
+     * set number of concurrent clients.
+     *
+     * @param clients number of concurrent clients
+     */
+    public void setClients(final int clients) {
+        this.clients = clients;
+    }
+
+    /**
+     * get target requests per second in open-loop mode.
+     *
+     * @return target requests per second
+     */
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * set target requests per second in open-loop mode.
+     *
+     * @param rate target requests per second
+     */
+    public void setRate(final int rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * get duration in seconds.
+     *
+     * @return duration in seconds
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * set duration in seconds.
+     *
+     * @param durationSeconds duration in seconds
+     */
+    public void setDurationSeconds(final int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * get report interval in seconds.
+     *
+     * @return report interval in seconds
+     */
+    public int getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    /**
+     * set report interval in seconds.
+     *
+     * @param reportIntervalSeconds report interval in seconds
+     */
+    public void setReportIntervalSeconds(final int reportIntervalSeconds) {
+        this.reportIntervalSeconds = reportIntervalSeconds;
+    }
+
+    /**
+     * 是否使用虚拟线程(需要Java 21及以上的运行时).
+     *
+     * @return 是否使用虚拟线程
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * 设置是否使用虚拟线程.
+     *
+     * @param virtualThreads 是否使用虚拟线程
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * get key algorithm, RSA or EC.
+     *
+     * @return key algorithm
+     */
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    /**
+     * set key algorithm, RSA or EC.
+     *
+     * @param keyAlgorithm key algorithm
+     */
+    public void setKeyAlgorithm(final String keyAlgorithm) {
+        this.keyAlgorithm = keyAlgorithm.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * get key size.
+     *
+     * @return key size
+     */
+    public int getKeySize() {
+        return keySize;
+    }
+
+    /**
+     * set key size.
+     *
+     * @param keySize key size
+     */
+    public void setKeySize(final int keySize) {
+        this.keySize = keySize;
+    }
+
+    /**
+     * get digest of signature algorithm, 如SHA256.
+     *
+     * @return digest of signature algorithm
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * set digest of signature algorithm.
+     *
+     * @param digest digest of signature algorithm
+     */
+    public void setDigest(final String digest) {
+        this.digest = digest.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * get depth of CA hierarchy, 1表示由根CA直接签发.
+     *
+     * @return depth of CA hierarchy
+     */
+    public int getCaDepth() {
+        return caDepth;
+    }
+
+    /**
+     * set depth of CA hierarchy.
+     *
+     * @param caDepth depth of CA hierarchy
+     */
+    public void setCaDepth(final int caDepth) {
+        this.caDepth = caDepth;
+    }
+
+    /**
+     * get size of pre-generated subscriber key pool.
+     *
+     * @return size of pre-generated subscriber key pool
+     */
+    public int getKeyPoolSize() {
+        return keyPoolSize;
+    }
+
+    /**
+     * set size of pre-generated subscriber key pool.
+     *
+     * @param keyPoolSize size of pre-generated subscriber key pool
+     */
+    public void setKeyPoolSize(final int keyPoolSize) {
+        this.keyPoolSize = keyPoolSize;
+    }
+
+    void validate() {
+        isTrue(clients > 0, "clients must be positive: %d", clients);
+        isTrue(mode != Mode.OPEN || rate > 0, "rate must be positive: %d", rate);
+        isTrue(durationSeconds > 0, "duration must be positive: %d", durationSeconds);
+        isTrue(reportIntervalSeconds > 0, "report interval must be positive: %d", reportIntervalSeconds);
+        isTrue("RSA".equals(keyAlgorithm) || "EC".equals(keyAlgorithm), "unsupported key algorithm: %s",
+                keyAlgorithm);
+        isTrue(caDepth > 0, "ca depth must be positive: %d", caDepth);
+        isTrue(keyPoolSize > 0, "key pool size must be positive: %d", keyPoolSize);
+    }
+
+    /**
+     * 从命令行参数解析, 参数格式为--name=value, 如--mode=open --rate=200 --key=EC --key-size=256.
+     *
+     * @param args 命令行参数
+     * @return LoadOptions
+     */
+    public static LoadOptions parse(final String[] args) {
+        final LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            final int eq = arg.indexOf('=');
+            isTrue(arg.startsWith("--"), "unknown argument: %s", arg);
+            final String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            final String value = eq < 0 ? "true" : arg.substring(eq + 1);
+            switch (name) {
+                case "mode":
+                    options.setMode(Mode.valueOf(value.toUpperCase(Locale.ROOT)));
+                    break;
+                case "clients":
+                    options.setClients(Integer.parseInt(value));
+                    break;
+                case "rate":
+                    options.setRate(Integer.parseInt(value));
+                    break;
+                case "duration":
+                    options.setDurationSeconds(Integer.parseInt(value));
+                    break;
+                case "report-interval":
+                    options.setReportIntervalSeconds(Integer.parseInt(value));
+                    break;
+                case "virtual-threads":
+                    options.setVirtualThreads(Boolean.parseBoolean(value));
+                    break;
+                case "key":
+                    options.setKeyAlgorithm(value);
+                    break;
+                case "key-size":
+                    options.setKeySize(Integer.parseInt(value));
+                    break;
+                case "digest":
+                    options.setDigest(value);
+                    break;
+                case "ca-depth":
+                    options.setCaDepth(Integer.parseInt(value));
+                    break;
+                case "key-pool":
+                    options.setKeyPoolSize(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown argument: " + arg);
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return "mode=" + mode + ", clients=" + clients + (mode == Mode.OPEN ? ", rate=" + rate : "")
+                + ", duration=" + durationSeconds + "s, virtualThreads=" + virtualThreads
+                + ", key=" + keyAlgorithm + ":" + keySize + ", digest=" + digest + ", caDepth=" + caDepth;
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.dbstarll.certs.publish;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 测试FileSystemPublisher.
+ */
+public class FileSystemPublisherTest {
+    @TempDir
+    Path caHome;
+
+    @Test
+    void publish() throws Exception {
+        try (FileSystemPublisher publisher = new FileSystemPublisher(caHome, 16, 5, 2)) {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(publisher.publish("LEAF" + i, ArtifactType.CER, bytes("cer" + i)));
+            }
+            futures.add(publisher.publish("ROOT", ArtifactType.KEY, bytes("key")));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+            // 覆盖已存在的文件
+            publisher.publish("LEAF0", ArtifactType.CER, bytes("renewed")).get();
+        }
+
+        assertEquals("renewed", read(caHome.resolve("LEAF0").resolve("LEAF0.cer")));
+        assertEquals("cer99", read(caHome.resolve("LEAF99").resolve("LEAF99.cer")));
+        final Path key = caHome.resolve("ROOT").resolve("ROOT.key");
+        assertEquals("key", read(key));
+        if (caHome.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(key)));
+        }
+        try (Stream<Path> files = Files.walk(caHome)) {
+            assertEquals(0, files.filter(p -> p.getFileName().toString().endsWith(".tmp")).count());
+        }
+    }
+
+    @Test
+    void partialFailure() throws Exception {
+        // 目标位置是非空目录, 重命名必然失败; CA目录位置是普通文件, 创建目录必然失败
+        Files.createDirectories(caHome.resolve("BAD").resolve("BAD.cer").resolve("occupied"));
+        Files.write(caHome.resolve("FILE"), bytes("file"));
+        final CompletableFuture<Void> good;
+        final CompletableFuture<Void> bad;
+        final CompletableFuture<Void> file;
+        try (FileSystemPublisher publisher = new FileSystemPublisher(caHome, 16, 50, 2)) {
+            good = publisher.publish("GOOD", ArtifactType.CER, bytes("good"));
+            bad = publisher.publish("BAD", ArtifactType.CER, bytes("bad"));
+            file = publisher.publish("FILE", ArtifactType.CER, bytes("file"));
+            CompletableFuture.allOf(good, bad, file).exceptionally(e -> null).get();
+        }
+
+        good.get();
+        assertEquals("good", read(caHome.resolve("GOOD").resolve("GOOD.cer")));
+        assertThrows(ExecutionException.class, bad::get);
+        assertThrows(ExecutionException.class, file::get);
+        assertEquals(0, Files.size(caHome.resolve(".publish.journal")));
+    }
+
+    @Test
+    void replay() throws Exception {
+        // 崩溃时残留的日志: 一条完整的记录和一条写了一半的记录
+        final byte[] complete = record("ROOT/ROOT.key", true, bytes("key"));
+        final byte[] torn = Arrays.copyOf(record("LEAF/LEAF.cer", false, bytes("cer")), 10);
+        final ByteBuffer journal = ByteBuffer.allocate(complete.length + torn.length).put(complete).put(torn);
+        Files.write(caHome.resolve(".publish.journal"), journal.array());
+
+        new FileSystemPublisher(caHome).close();
+        final Path key = caHome.resolve("ROOT").resolve("ROOT.key");
+        assertEquals("key", read(key));
+        if (caHome.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(key)));
+        }
+        assertFalse(Files.exists(caHome.resolve("LEAF")));
+        assertEquals(0, Files.size(caHome.resolve(".publish.journal")));
+    }
+
+    @Test
+    void publishAfterClose() throws Exception {
+        final FileSystemPublisher publisher = new FileSystemPublisher(caHome);
+        publisher.close();
+        final CompletableFuture<Void> future = publisher.publish("ROOT", ArtifactType.CER, bytes("cer"));
+        final ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertEquals(IllegalStateException.class, e.getCause().getClass());
+    }
+
+    @Test
+    void invalidName() throws Exception {
+        try (FileSystemPublisher publisher = new FileSystemPublisher(caHome)) {
+            assertThrows(IllegalArgumentException.class, () -> publisher.publish("..", ArtifactType.CER, bytes("")));
+            assertThrows(IllegalArgumentException.class, () -> publisher.publish("a/b", ArtifactType.CER, bytes("")));
+        }
+    }
+
+    private static byte[] record(final String path, final boolean secret, final byte[] content) {
+        final byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(4 + name.length + 1 + 4 + content.length + 4);
+        record.putInt(name.length).put(name).put((byte) (secret ? 1 : 0)).putInt(content.length).put(content);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        return record.putInt((int) crc.getValue()).array();
+    }
+
+    private static byte[] bytes(final String content) {
+        return content.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String read(final Path file) throws Exception {
+        return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+    }
+}
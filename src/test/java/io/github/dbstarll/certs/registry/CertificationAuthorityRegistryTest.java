@@ -0,0 +1,142 @@
+package io.github.dbstarll.certs.registry;
+
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.certs.publish.ArtifactType;
+import io.github.dbstarll.certs.publish.FileSystemPublisher;
+import io.github.dbstarll.certs.utils.CertificationAuthorityUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 测试CertificationAuthorityRegistry.
+ */
+public class CertificationAuthorityRegistryTest {
+    @TempDir
+    Path caHome;
+
+    @Test
+    void reload() throws Exception {
+        final CertificationAuthority root = CertificationAuthorityUtils.buildOne("ROOT", null, null, 2048);
+        final CertificationAuthority client = CertificationAuthorityUtils.buildOne("CLIENT", root, 1, 2048);
+        final CertificationAuthority leaf = CertificationAuthorityUtils.buildOne("LEAF", client, 0, 2048);
+        try (FileSystemPublisher publisher = new FileSystemPublisher(caHome)) {
+            publisher.publish(root, null).get();
+            publisher.publish(client, null).get();
+            publisher.publish(leaf, null).get();
+        }
+
+        final CertificationAuthorityRegistry registry = new CertificationAuthorityRegistry();
+        registry.reload(caHome, null);
+        assertEquals(3, registry.getAll().size());
+
+        final CertificationAuthority loaded = registry.get("LEAF");
+        assertEquals(leaf.getCrt(), loaded.getCrt());
+        assertSame(registry.get("CLIENT"), loaded.getIssuer());
+        assertSame(registry.get("ROOT"), loaded.getIssuer().getIssuer());
+        assertNull(registry.get("ROOT").getIssuer());
+        assertSame(loaded, registry.getBySubject(leaf.getCrt().getSubject()));
+        assertSame(loaded, registry.getByKeyIdentifier(leaf.getCrt().getSubjectKeyIdentifier()));
+    }
+
+    @Test
+    void reloadVerified() throws Exception {
+        final CertificationAuthority root = CertificationAuthorityUtils.buildOne("ROOT", null, null, 2048);
+        final CertificationAuthority client = CertificationAuthorityUtils.buildOne("CLIENT", root, 1, 2048);
+        final CertificationAuthority leaf = CertificationAuthorityUtils.buildOne("LEAF", client, 0, 2048);
+        try (FileSystemPublisher publisher = new FileSystemPublisher(caHome)) {
+            publisher.publish(root, null).get();
+            publisher.publish(client, null).get();
+            publisher.publish(leaf, null).get();
+        }
+        final CertificationAuthorityRegistry registry = new CertificationAuthorityRegistry();
+        registry.reload(caHome, null);
+        final CertificationAuthority loaded = registry.get("CLIENT");
+
+        // 发布过程中只替换了私钥: 私钥与证书不匹配, 保留原有的CLIENT
+        final CertificationAuthority rekeyed = CertificationAuthorityUtils.buildOne("CLIENT", root, 1, 2048);
+        final Path dir = caHome.resolve("CLIENT");
+        write(dir.resolve(ArtifactType.KEY.fileName("CLIENT")), out -> rekeyed.writeKey(out, null));
+        registry.reload(caHome, null);
+        assertEquals(3, registry.getAll().size());
+        assertEquals(client.getCrt(), registry.get("CLIENT").getCrt());
+        assertEquals(loaded.getCrt(), registry.get("LEAF").getIssuer().getCrt());
+        assertSame(registry.get("ROOT"), registry.get("CLIENT").getIssuer());
+
+        // 证书也替换后CLIENT被加载, 但它没有签发LEAF, LEAF不链接到它
+        write(dir.resolve(ArtifactType.CER.fileName("CLIENT")), out -> rekeyed.writeCER(out, null));
+        registry.reload(caHome, null);
+        assertEquals(rekeyed.getCrt(), registry.get("CLIENT").getCrt());
+        assertNull(registry.get("LEAF").getIssuer());
+    }
+
+    @Test
+    void renew() throws Exception {
+        final CertificationAuthority root = CertificationAuthorityUtils.buildOne("ROOT", null, null, 2048);
+        final CertificationAuthority client = CertificationAuthorityUtils.buildOne("CLIENT", root, 1, 2048);
+        final CertificationAuthority leaf = CertificationAuthorityUtils.buildOne("LEAF", client, 0, 2048);
+
+        final CertificationAuthorityRegistry registry = new CertificationAuthorityRegistry();
+        registry.register(Arrays.asList(root, client, leaf));
+        assertSame(client, registry.get("LEAF").getIssuer());
+
+        // 同一证书与密钥的新对象: LEAF由其签发, 重新链接
+        final CertificationAuthority relinked = client.withIssuer(root);
+        registry.register(Collections.singleton(relinked));
+        assertSame(relinked, registry.get("CLIENT"));
+        assertSame(relinked, registry.get("LEAF").getIssuer());
+        assertEquals(leaf.getCrt(), registry.get("LEAF").getCrt());
+
+        // 更换了密钥的CLIENT无法验证LEAF的签名, LEAF保留原来的签发者
+        final CertificationAuthority rekeyed = CertificationAuthorityUtils.buildOne("CLIENT", root, 1, 2048);
+        registry.register(Collections.singleton(rekeyed));
+        assertSame(rekeyed, registry.get("CLIENT"));
+        assertSame(relinked, registry.get("LEAF").getIssuer());
+        assertNull(registry.getByKeyIdentifier(client.getCrt().getSubjectKeyIdentifier()));
+        assertNotNull(registry.getByKeyIdentifier(rekeyed.getCrt().getSubjectKeyIdentifier()));
+
+        // 以新密钥重新签发的LEAF链接到新的CLIENT
+        final CertificationAuthority reissued = CertificationAuthorityUtils.buildOne("LEAF", rekeyed, 0, 2048);
+        registry.register(Collections.singleton(reissued));
+        assertSame(rekeyed, registry.get("LEAF").getIssuer());
+
+        registry.unregister(Collections.singleton("LEAF"));
+        assertNull(registry.get("LEAF"));
+        assertEquals(2, registry.getAll().size());
+    }
+
+    @Test
+    void cycle() {
+        final CertificationAuthority a = new CertificationAuthority("A", null, null, null, null);
+        final CertificationAuthority b = new CertificationAuthority("B", null, null, null, null, a);
+        final CertificationAuthority cyclic = new CertificationAuthority("A", null, null, null, null, b);
+
+        final CertificationAuthorityRegistry registry = new CertificationAuthorityRegistry();
+        registry.register(Arrays.asList(cyclic, b));
+        assertEquals(2, registry.getAll().size());
+        assertSame(cyclic, registry.get("A"));
+        assertSame(a, registry.get("B").getIssuer());
+    }
+
+    private static void write(final Path file, final PemWriting writing) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            writing.writeTo(out);
+        }
+    }
+
+    private interface PemWriting {
+        void writeTo(Writer out) throws IOException;
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.dbstarll.certs.revocation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试RevocationStore.
+ */
+public class RevocationStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void revokeAndReload() throws Exception {
+        final Path file = directory.resolve("ROOT.revoked");
+        final RevocationStore store = RevocationStore.open(file, 100);
+        final Random random = new Random(0);
+        final Set<Long> revoked = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            final long serial = random.nextLong();
+            revoked.add(serial);
+            store.revoke(serial);
+        }
+        store.revoke(0);
+        revoked.add(0L);
+        store.revoke(BigInteger.valueOf(Long.MIN_VALUE));
+        revoked.add(Long.MIN_VALUE);
+
+        assertEquals(revoked.size(), store.size());
+        for (long serial : revoked) {
+            assertTrue(store.isRevoked(serial));
+        }
+        assertFalse(store.isRevoked(random.nextLong()));
+        assertFalse(store.isRevoked(BigInteger.ONE.shiftLeft(100)));
+
+        store.save();
+        final RevocationStore reloaded = RevocationStore.open(file);
+        assertEquals(revoked.size(), reloaded.size());
+        for (long serial : revoked) {
+            assertTrue(reloaded.isRevoked(BigInteger.valueOf(serial)));
+        }
+        assertFalse(reloaded.isRevoked(1));
+    }
+
+    @Test
+    void concurrentReaders() throws Exception {
+        final RevocationStore store = RevocationStore.open(directory.resolve("ROOT.revoked"), 64);
+        // 只吊销偶数序列号, 奇数序列号永远不应命中
+        final int total = 50000;
+        final long[] serials = new long[total];
+        final Random random = new Random(0);
+        for (int i = 0; i < total; i++) {
+            serials[i] = random.nextLong() & ~1L;
+        }
+        final AtomicInteger published = new AtomicInteger();
+        final AtomicBoolean done = new AtomicBoolean();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                final Random local = new Random(r);
+                readers.add(executor.submit(() -> {
+                    int checks = 0;
+                    while (!done.get() || checks == 0) {
+                        final int limit = published.get();
+                        for (int k = 0; k < 100 && limit > 0; k++) {
+                            final int i = local.nextInt(limit);
+                            assertTrue(store.isRevoked(serials[i]), "lost serial " + serials[i]);
+                            assertFalse(store.isRevoked(serials[i] | 1L));
+                            checks++;
+                        }
+                    }
+                    return checks;
+                }));
+            }
+            for (int i = 0; i < total; i++) {
+                store.revoke(serials[i]);
+                published.set(i + 1);
+                if (i % 10000 == 0) {
+                    store.merge();
+                }
+            }
+            done.set(true);
+            for (Future<Integer> reader : readers) {
+                assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final Set<Long> revoked = new HashSet<>();
+        for (long serial : serials) {
+            assertTrue(store.isRevoked(serial));
+            revoked.add(serial);
+        }
+        assertEquals(revoked.size(), store.size());
+    }
+}
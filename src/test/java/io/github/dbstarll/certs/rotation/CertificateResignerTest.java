@@ -0,0 +1,124 @@
+package io.github.dbstarll.certs.rotation;
+
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificateSigningRequest;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.certs.model.Subject;
+import io.github.dbstarll.certs.utils.CertificationAuthorityUtils;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试CertificateResigner.
+ */
+public class CertificateResignerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void rotate() throws Exception {
+        final CertificationAuthority root = CertificationAuthorityUtils.buildOne("ROOT", null, null, 2048);
+        final CertificationAuthority old = CertificationAuthorityUtils.buildOne("SERVER", root, 0, 2048);
+        final CertificationAuthority renewed = CertificationAuthorityUtils.buildOne("SERVER", root, 0, 2048);
+
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        final KeyPair keyPair = generator.generateKeyPair();
+        final CertificateSigningRequest csr = CertificateSigningRequest.generate(keyPair,
+                Subject.from(new X500Name("C=CN,O=上海云屹信息技术有限公司,CN=云屹-LEAF")), null,
+                SignatureAlgorithm.SHA256withECDSA);
+        final List<Certificate> leaves = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            leaves.add(Certificate.generate(csr, old, SignatureAlgorithm.SHA256withRSA));
+        }
+
+        final Path input = dir.resolve("issued.pem");
+        final Path output = dir.resolve("resigned.pem");
+        final Path checkpoint = dir.resolve("rotation.checkpoint");
+        append(input, leaves.subList(0, 10));
+        final CertificateResigner resigner = new CertificateResigner(renewed, SignatureAlgorithm.SHA256withRSA, 4, 2);
+        assertEquals(10, resigner.rotate(input, output, checkpoint));
+
+        // 模拟中断: 输出文件中检查点之后残留未完成的批次
+        Files.write(output, "-----BEGIN CERTIFICATE-----\nMII".getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.APPEND);
+        // 续做时直接定位到检查点记录的输入偏移, 不再读取已处理的部分
+        final byte[] processed = new byte[(int) Files.size(input)];
+        Arrays.fill(processed, (byte) ' ');
+        Files.write(input, processed);
+        append(input, leaves.subList(10, 25));
+        // 同名但密钥不同的签发者不能沿用检查点
+        final CertificateResigner sameName = new CertificateResigner(old, SignatureAlgorithm.SHA256withRSA, 4, 2);
+        assertThrows(IllegalStateException.class, () -> sameName.rotate(input, output, checkpoint));
+        assertEquals(15, resigner.rotate(input, output, checkpoint));
+        assertEquals(0, resigner.rotate(input, output, checkpoint));
+
+        final X509CertificateHolder issuer = new X509CertificateHolder(renewed.getCrt().getEncoded());
+        final List<X509CertificateHolder> resigned = read(output);
+        assertEquals(25, resigned.size());
+        for (int i = 0; i < resigned.size(); i++) {
+            final X509CertificateHolder original = new X509CertificateHolder(leaves.get(i).getEncoded());
+            final X509CertificateHolder holder = resigned.get(i);
+            assertEquals(issuer.getSubject(), holder.getIssuer());
+            assertEquals(original.getSubject(), holder.getSubject());
+            assertEquals(original.getSubjectPublicKeyInfo(), holder.getSubjectPublicKeyInfo());
+            assertEquals(original.getExtension(Extension.cRLDistributionPoints),
+                    holder.getExtension(Extension.cRLDistributionPoints));
+            assertNotEquals(original.getSerialNumber(), holder.getSerialNumber());
+            assertEquals(original.getNotAfter().getTime() - original.getNotBefore().getTime(),
+                    holder.getNotAfter().getTime() - holder.getNotBefore().getTime());
+            assertArrayEquals(renewed.getCrt().getSubjectKeyIdentifier(), AuthorityKeyIdentifier
+                    .fromExtensions(holder.getExtensions()).getKeyIdentifier());
+            assertTrue(holder.isSignatureValid(new JcaContentVerifierProviderBuilder().build(issuer)));
+        }
+
+        final CertificateResigner other = new CertificateResigner(root, SignatureAlgorithm.SHA256withRSA, 4, 2);
+        assertThrows(IllegalStateException.class, () -> other.rotate(input, output, checkpoint));
+    }
+
+    private static void append(final Path file, final List<Certificate> certificates) throws Exception {
+        final StringWriter pem = new StringWriter();
+        for (Certificate certificate : certificates) {
+            certificate.writePEM(pem, null);
+        }
+        Files.write(file, pem.toString().getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static List<X509CertificateHolder> read(final Path file) throws Exception {
+        final List<X509CertificateHolder> holders = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII);
+             PemReader pemReader = new PemReader(reader)) {
+            for (PemObject pem = pemReader.readPemObject(); pem != null; pem = pemReader.readPemObject()) {
+                holders.add(new X509CertificateHolder(pem.getContent()));
+            }
+        }
+        return holders;
+    }
+}
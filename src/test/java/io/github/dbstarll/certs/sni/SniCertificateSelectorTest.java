@@ -0,0 +1,92 @@
+package io.github.dbstarll.certs.sni;
+
+import io.github.dbstarll.certs.CertificateFixtures;
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.certs.model.CertificationAuthority;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 测试SniCertificateSelector.
+ */
+public class SniCertificateSelectorTest {
+    private static KeyPair keyPair;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        keyPair = CertificateFixtures.keyPair("RSA", 2048);
+    }
+
+    @Test
+    void select() throws Exception {
+        final Certificate exact = issue(new GeneralName(GeneralName.dNSName, "www.example.com"));
+        final Certificate wildcard = issue(new GeneralName(GeneralName.dNSName, "*.Example.com"));
+        final Certificate ip = issue(new GeneralName(GeneralName.iPAddress, "10.0.0.1"),
+                new GeneralName(GeneralName.dNSName, "internal"));
+
+        final SniCertificateSelector selector = new SniCertificateSelector();
+        selector.add(Arrays.asList(exact, wildcard, ip));
+
+        assertEquals(exact, selector.select("www.example.com"));
+        assertEquals(exact, selector.select("WWW.example.com."));
+        assertEquals(wildcard, selector.select("api.example.com"));
+        assertNull(selector.select("a.b.example.com"));
+        assertNull(selector.select("example.com"));
+        assertNull(selector.select("www.example.org"));
+        assertEquals(ip, selector.select("internal"));
+        assertEquals(ip, selector.select("10.0.0.1"));
+        assertEquals(ip, selector.select(InetAddress.getByName("10.0.0.1")));
+        assertNull(selector.select("10.0.0.2"));
+        assertNull(selector.select("www.example.com", exact.getNotAfter().getTime() + 1));
+
+        selector.remove(Collections.singletonList(exact));
+        assertEquals(wildcard, selector.select("www.example.com"));
+        selector.remove(Arrays.asList(wildcard, ip));
+        assertNull(selector.select("www.example.com"));
+        assertNull(selector.select("10.0.0.1"));
+    }
+
+    @Test
+    void newestWins() throws Exception {
+        final CertificationAuthority issuer = CertificateFixtures.authority("ROOT", keyPair, CertificateFixtures.ROOT,
+                new GeneralNames(new GeneralName(GeneralName.dNSName, "www.example.com")),
+                SignatureAlgorithm.SHA256withRSA);
+        final Certificate crt = issuer.getCrt();
+        final long now = System.currentTimeMillis();
+        final Certificate older = crt.resign(issuer, SignatureAlgorithm.SHA256withRSA,
+                new Date(now - TimeUnit.DAYS.toMillis(2)));
+        final Certificate newer = crt.resign(issuer, SignatureAlgorithm.SHA256withRSA,
+                new Date(now - TimeUnit.DAYS.toMillis(1)));
+
+        final SniCertificateSelector selector = new SniCertificateSelector();
+        selector.add(Collections.singletonList(newer));
+        selector.add(Collections.singletonList(older));
+        assertEquals(newer, selector.select("www.example.com", now));
+        // newer尚未生效时回退到older
+        assertEquals(older, selector.select("www.example.com", now - TimeUnit.HOURS.toMillis(36)));
+
+        final SniCertificateSelector reversed = new SniCertificateSelector();
+        reversed.add(Arrays.asList(older, newer));
+        assertEquals(newer, reversed.select("www.example.com", now));
+        reversed.remove(Collections.singletonList(newer));
+        assertEquals(older, reversed.select("www.example.com", now));
+    }
+
+    private static Certificate issue(final GeneralName... sanNames) throws Exception {
+        return CertificateFixtures.certificate(keyPair, CertificateFixtures.ROOT, CertificateFixtures.ROOT,
+                new GeneralNames(sanNames), SignatureAlgorithm.SHA256withRSA);
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.dbstarll.certs.transparency;
+
+import io.github.dbstarll.certs.CertificateFixtures;
+import io.github.dbstarll.certs.model.Certificate;
+import io.github.dbstarll.utils.lang.security.SignatureAlgorithm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 测试MerkleAuditLog.
+ */
+public class MerkleAuditLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendAndProve() throws Exception {
+        final KeyPair keyPair = CertificateFixtures.keyPair("RSA", 2048);
+        final List<Certificate> certificates = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            certificates.add(CertificateFixtures.certificate(keyPair, CertificateFixtures.ROOT,
+                    CertificateFixtures.ROOT, null, SignatureAlgorithm.SHA256withRSA));
+        }
+
+        final List<byte[]> roots = new ArrayList<>();
+        final SignedTreeHead signed;
+        try (MerkleAuditLog log = MerkleAuditLog.open(directory, keyPair.getPrivate(),
+                SignatureAlgorithm.SHA256withRSA)) {
+            final SignedTreeHead first = log.append(certificates.subList(0, 3));
+            assertEquals(3, first.getTreeSize());
+            assertTrue(first.verify(keyPair.getPublic()));
+            log.append(certificates.get(3));
+            final SignedTreeHead last = log.append(certificates.subList(4, certificates.size()));
+            assertEquals(certificates.size(), last.getTreeSize());
+            assertTrue(last.verify(keyPair.getPublic()));
+            assertArrayEquals(log.rootHash(log.size()), last.getRootHash());
+            signed = last;
+
+            for (int size = 1; size <= certificates.size(); size++) {
+                roots.add(log.rootHash(size));
+            }
+            for (int size = 1; size <= certificates.size(); size++) {
+                for (int index = 0; index < size; index++) {
+                    final byte[] leafHash = MerkleAuditLog.leafHash(certificates.get(index).getEncoded());
+                    assertTrue(MerkleAuditLog.verifyInclusion(leafHash, index, size,
+                            log.inclusionProof(index, size), roots.get(size - 1)));
+                }
+                for (int firstSize = 1; firstSize <= size; firstSize++) {
+                    assertTrue(MerkleAuditLog.verifyConsistency(firstSize, size, roots.get(firstSize - 1),
+                            roots.get(size - 1), log.consistencyProof(firstSize, size)));
+                }
+            }
+        }
+
+        try (MerkleAuditLog log = MerkleAuditLog.open(directory, keyPair.getPrivate(),
+                SignatureAlgorithm.SHA256withRSA)) {
+            assertEquals(certificates.size(), log.size());
+            assertArrayEquals(roots.get(roots.size() - 1), log.rootHash(log.size()));
+
+            // 重新打开后仍可获得上次签名的树头
+            final SignedTreeHead reopened = log.getTreeHead();
+            assertEquals(signed.getTimestamp(), reopened.getTimestamp());
+            assertArrayEquals(signed.getSignature(), reopened.getSignature());
+            assertTrue(reopened.verify(keyPair.getPublic()));
+        }
+
+        // 崩溃时写了一半、未签名树头的批次在打开时丢弃
+        Files.write(directory.resolve("level-00.dat"), new byte[MerkleAuditLog.HASH_LENGTH * 3 + 5],
+                StandardOpenOption.APPEND);
+        Files.write(directory.resolve("level-01.dat"), new byte[MerkleAuditLog.HASH_LENGTH],
+                StandardOpenOption.APPEND);
+        try (MerkleAuditLog log = MerkleAuditLog.open(directory, keyPair.getPrivate(),
+                SignatureAlgorithm.SHA256withRSA)) {
+            assertEquals(certificates.size(), log.size());
+            assertArrayEquals(signed.getSignature(), log.getTreeHead().getSignature());
+            assertArrayEquals(roots.get(roots.size() - 1), log.rootHash(log.size()));
+
+            // 重试的批次紧接在已提交的条目之后
+            final SignedTreeHead retried = log.append(certificates.subList(0, 2));
+            assertEquals(certificates.size() + 2, retried.getTreeSize());
+            assertTrue(retried.verify(keyPair.getPublic()));
+            assertTrue(MerkleAuditLog.verifyConsistency(certificates.size(), retried.getTreeSize(),
+                    signed.getRootHash(), retried.getRootHash(),
+                    log.consistencyProof(certificates.size(), retried.getTreeSize())));
+        }
+        assertEquals((certificates.size() + 2) * MerkleAuditLog.HASH_LENGTH,
+                Files.size(directory.resolve("level-00.dat")));
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.dbstarll.certs.utils;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.security.Provider;
+import java.security.Security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 测试CryptoProviders.
+ */
+public class CryptoProvidersTest {
+    @BeforeAll
+    static void setup() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @AfterEach
+    void reset() {
+        CryptoProviders.reset();
+    }
+
+    @Test
+    void warmUp() {
+        CryptoProviders.init();
+
+        final Provider signing = CryptoProviders.signing("SHA256withRSA");
+        assertNotNull(signing);
+        assertNotNull(signing.getService("Signature", "SHA256withRSA"));
+        assertNotNull(CryptoProviders.verification("SHA256withRSA"));
+        assertNotNull(CryptoProviders.keyGeneration("EC"));
+        assertEquals(signing, CryptoProviders.signing("SHA256WITHRSA"));
+        assertEquals(signing, CryptoProviders.warmUp(CryptoProviders.Operation.SIGNING, "SHA256withRSA"));
+    }
+
+    @Test
+    void configured() {
+        System.setProperty("certs.provider.sign.SHA384withRSA", BouncyCastleProvider.PROVIDER_NAME);
+        System.setProperty("certs.provider.verify.SHA256withRSA", BouncyCastleProvider.PROVIDER_NAME);
+        try {
+            assertEquals(BouncyCastleProvider.PROVIDER_NAME, CryptoProviders.signing("SHA384withRSA").getName());
+            // DefaultAlgorithmNameFinder给出的算法名为全大写
+            assertEquals(BouncyCastleProvider.PROVIDER_NAME,
+                    CryptoProviders.verification("SHA256WITHRSA").getName());
+        } finally {
+            System.clearProperty("certs.provider.sign.SHA384withRSA");
+            System.clearProperty("certs.provider.verify.SHA256withRSA");
+        }
+    }
+}